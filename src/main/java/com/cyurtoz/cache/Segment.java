@@ -0,0 +1,37 @@
+package com.cyurtoz.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.kafka.common.TopicPartition;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A cached, contiguous offset range {@code [firstOffset, lastOffset]} of one partition, stored in one file.
+ */
+@Getter
+@AllArgsConstructor
+public class Segment {
+    private final TopicPartition topicPartition;
+    private final long firstOffset;
+    private final long lastOffset;
+    private final long sizeBytes;
+    private final Path path;
+
+    public boolean covers(long offset) {
+        return firstOffset <= offset && offset <= lastOffset;
+    }
+
+    /**
+     * Maps the segment file into memory for reading.
+     */
+    public SegmentReader open() throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new SegmentReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+                    topicPartition);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.cyurtoz.cache;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * On-disk cache of fetched partition ranges, so replaying the same window again reads local files instead of
+ * the source cluster. Segments are named {@code <topic>-<partition>-<firstOffset>-<lastOffset>.seg} and the
+ * least recently used ones are deleted once the cache grows beyond {@code max-bytes}. Segments of a chain handed
+ * out by {@link #findChain} are pinned until the chain is released, since readers open them one after the other.
+ */
+@Component
+@Slf4j
+public class SegmentCache {
+
+    private static final String SUFFIX = ".seg";
+
+    @Getter
+    private final boolean enabled;
+    @Getter
+    private final Path directory;
+    private final long maxBytes;
+    private final long segmentMaxBytes;
+    private final LinkedHashMap<Path, Segment> segments;
+    private final Map<Path, Integer> pins;
+    private long totalBytes;
+
+    public SegmentCache(@Value("${kafka-playback-service.cache.enabled:true}") boolean enabled,
+                        @Value("${kafka-playback-service.cache.directory:${java.io.tmpdir}/kafka-playback-cache}") String directory,
+                        @Value("${kafka-playback-service.cache.max-bytes:10737418240}") long maxBytes,
+                        @Value("${kafka-playback-service.cache.segment-max-bytes:268435456}") long segmentMaxBytes) {
+        this.directory = Paths.get(directory);
+        this.maxBytes = maxBytes;
+        this.segmentMaxBytes = Math.min(segmentMaxBytes, Integer.MAX_VALUE);
+        this.segments = new LinkedHashMap<>(16, 0.75f, true);
+        this.pins = new HashMap<>();
+        this.enabled = enabled && load();
+    }
+
+    private boolean load() {
+        try {
+            Files.createDirectories(directory);
+            try (var files = Files.list(directory)) {
+                for (Path path : files.collect(Collectors.toList())) {
+                    var name = path.getFileName().toString();
+                    if (name.endsWith(SUFFIX)) add(parse(path));
+                    else if (name.endsWith(".tmp")) Files.deleteIfExists(path);
+                }
+            }
+            log.info("Segment cache at {} holds {} segments, {} bytes", directory, segments.size(), totalBytes);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Segment cache disabled, {} is not usable", directory, e);
+            return false;
+        }
+    }
+
+    private Segment parse(Path path) throws IOException {
+        var name = path.getFileName().toString();
+        var base = name.substring(0, name.length() - SUFFIX.length());
+        int lastDash = base.lastIndexOf('-');
+        int firstDash = base.lastIndexOf('-', lastDash - 1);
+        int partitionDash = base.lastIndexOf('-', firstDash - 1);
+        var topicPartition = new TopicPartition(base.substring(0, partitionDash),
+                Integer.parseInt(base.substring(partitionDash + 1, firstDash)));
+        return new Segment(topicPartition, Long.parseLong(base.substring(firstDash + 1, lastDash)),
+                Long.parseLong(base.substring(lastDash + 1)), Files.size(path), path);
+    }
+
+    /**
+     * Finds cached segments that cover the partition contiguously from {@code startOffset} on and pins them, so
+     * they are not evicted before {@link #release} is called with the chain.
+     *
+     * @param endOffset last offset needed, or a negative value if the range is open ended
+     */
+    public synchronized List<Segment> findChain(TopicPartition topicPartition, long startOffset, long endOffset) {
+        var chain = new ArrayList<Segment>();
+        if (!enabled) return chain;
+        long position = startOffset;
+        while (endOffset < 0 || position <= endOffset) {
+            final long offset = position;
+            var next = segments.values().stream()
+                    .filter(s -> s.getTopicPartition().equals(topicPartition) && s.covers(offset))
+                    .max(Comparator.comparingLong(Segment::getLastOffset));
+            if (next.isEmpty()) break;
+            segments.get(next.get().getPath());
+            pins.merge(next.get().getPath(), 1, Integer::sum);
+            chain.add(next.get());
+            position = next.get().getLastOffset() + 1;
+        }
+        return chain;
+    }
+
+    /**
+     * Unpins the segments of a chain from {@link #findChain}, evicting them if the cache has grown too large since.
+     */
+    public synchronized void release(List<Segment> chain) {
+        for (Segment segment : chain) pins.computeIfPresent(segment.getPath(), (path, count) -> count > 1 ? count - 1 : null);
+        evict();
+    }
+
+    /**
+     * @return a writer that caches a fetch of the partition starting at {@code firstOffset}, or null if caching is off
+     */
+    public SegmentWriter openWriter(TopicPartition topicPartition, long firstOffset) {
+        return enabled ? new SegmentWriter(this, topicPartition, firstOffset, segmentMaxBytes) : null;
+    }
+
+    synchronized void register(TopicPartition topicPartition, long firstOffset, long lastOffset, long size, Path tempFile)
+            throws IOException {
+        var path = directory.resolve(String.format("%s-%d-%d-%d%s",
+                topicPartition.topic(), topicPartition.partition(), firstOffset, lastOffset, SUFFIX));
+        Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        var previous = segments.remove(path);
+        if (previous != null) totalBytes -= previous.getSizeBytes();
+        add(new Segment(topicPartition, firstOffset, lastOffset, size, path));
+        evict();
+    }
+
+    private void add(Segment segment) {
+        segments.put(segment.getPath(), segment);
+        totalBytes += segment.getSizeBytes();
+    }
+
+    private void evict() {
+        var iterator = segments.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<Path, Segment> eldest = iterator.next();
+            if (pins.containsKey(eldest.getKey())) continue;
+            iterator.remove();
+            totalBytes -= eldest.getValue().getSizeBytes();
+            try {
+                Files.deleteIfExists(eldest.getKey());
+            } catch (IOException e) {
+                log.warn("Could not evict segment {}", eldest.getKey(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.cyurtoz.cache;
+
+import com.cyurtoz.model.KafkaMessage;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Iterates the records of a memory-mapped segment file. See {@link SegmentWriter} for the layout.
+ */
+public class SegmentReader {
+
+    private final ByteBuffer buffer;
+    private final TopicPartition topicPartition;
+    private long offset;
+    private KafkaMessage<byte[]> message;
+
+    SegmentReader(ByteBuffer buffer, TopicPartition topicPartition) {
+        this.buffer = buffer;
+        this.topicPartition = topicPartition;
+    }
+
+    /**
+     * Advances to the next record.
+     *
+     * @return false at the end of the segment
+     */
+    public boolean next() {
+        if (!buffer.hasRemaining()) return false;
+        offset = buffer.getLong();
+        long timestamp = buffer.getLong();
+        byte[] key = readBytes();
+        byte[] value = readBytes();
+        int headerCount = buffer.getInt();
+        var headers = new RecordHeaders();
+        for (int i = 0; i < headerCount; i++) {
+            headers.add(new String(readBytes(), StandardCharsets.UTF_8), readBytes());
+        }
+        message = new KafkaMessage<>(timestamp, value, key, headers, topicPartition.topic(), topicPartition.partition(),
+                offset);
+        return true;
+    }
+
+    public long offset() {
+        return offset;
+    }
+
+    public KafkaMessage<byte[]> message() {
+        return message;
+    }
+
+    private byte[] readBytes() {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,119 @@
+package com.cyurtoz.cache;
+
+import com.cyurtoz.model.KafkaMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Appends the records of one partition fetch to segment files, rolling to a new file at {@code maxBytes}.
+ * <p>
+ * Record layout: offset (long), timestamp (long), key, value, header count (int) and per header its name and value,
+ * where every byte field is an int length (-1 for null) followed by the bytes.
+ * A segment only becomes visible in the cache once it is committed.
+ */
+@Slf4j
+public class SegmentWriter implements AutoCloseable {
+
+    private final SegmentCache cache;
+    private final TopicPartition topicPartition;
+    private final long maxBytes;
+    private long firstOffset;
+    private long lastOffset;
+    private Path tempFile;
+    private DataOutputStream out;
+    private boolean failed;
+
+    SegmentWriter(SegmentCache cache, TopicPartition topicPartition, long firstOffset, long maxBytes) {
+        this.cache = cache;
+        this.topicPartition = topicPartition;
+        this.firstOffset = firstOffset;
+        this.lastOffset = -1L;
+        this.maxBytes = maxBytes;
+    }
+
+    public void append(long offset, KafkaMessage<byte[]> message) {
+        if (failed) return;
+        try {
+            if (out == null) open();
+            out.writeLong(offset);
+            out.writeLong(message.getTimestamp());
+            writeBytes(message.getKey());
+            writeBytes(message.getPayload());
+            var headers = message.getHeaders() == null ? new Header[0] : message.getHeaders().toArray();
+            out.writeInt(headers.length);
+            for (Header header : headers) {
+                writeBytes(header.key().getBytes(StandardCharsets.UTF_8));
+                writeBytes(header.value());
+            }
+            lastOffset = offset;
+            if (out.size() >= maxBytes) roll();
+        } catch (IOException e) {
+            log.warn("Caching {} failed, the rest of this fetch is not cached", topicPartition, e);
+            failed = true;
+            discard();
+        }
+    }
+
+    private void open() throws IOException {
+        tempFile = Files.createTempFile(cache.getDirectory(), topicPartition.toString(), ".tmp");
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), 64 * 1024));
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private void roll() throws IOException {
+        commit();
+        firstOffset = lastOffset + 1;
+    }
+
+    private void commit() throws IOException {
+        if (out == null) return;
+        out.close();
+        long size = out.size();
+        out = null;
+        if (lastOffset >= firstOffset) {
+            cache.register(topicPartition, firstOffset, lastOffset, size, tempFile);
+        } else {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private void discard() {
+        try {
+            if (out != null) out.close();
+            if (tempFile != null) Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+            log.debug("Could not delete {}", tempFile, e);
+        }
+        out = null;
+    }
+
+    /**
+     * Commits whatever was written so far; the cached range ends at the last appended offset.
+     */
+    @Override
+    public void close() {
+        if (failed) return;
+        try {
+            commit();
+        } catch (IOException e) {
+            log.warn("Caching {} failed", topicPartition, e);
+            discard();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.cyurtoz.capture;
+
+import com.github.luben.zstd.Zstd;
+import net.jpountz.lz4.LZ4Factory;
+
+/**
+ * How the chunks of a capture file are compressed. LZ4 favours speed, ZSTD favours size.
+ */
+public enum CaptureCompression {
+
+    NONE {
+        @Override
+        byte[] compress(byte[] raw) {
+            return raw;
+        }
+
+        @Override
+        byte[] decompress(byte[] compressed, int length) {
+            return compressed;
+        }
+    },
+    LZ4 {
+        @Override
+        byte[] compress(byte[] raw) {
+            return LZ4Factory.fastestInstance().fastCompressor().compress(raw);
+        }
+
+        @Override
+        byte[] decompress(byte[] compressed, int length) {
+            return LZ4Factory.fastestInstance().fastDecompressor().decompress(compressed, length);
+        }
+    },
+    ZSTD {
+        @Override
+        byte[] compress(byte[] raw) {
+            return Zstd.compress(raw, ZSTD_LEVEL);
+        }
+
+        @Override
+        byte[] decompress(byte[] compressed, int length) {
+            return Zstd.decompress(compressed, length);
+        }
+    };
+
+    private static final int ZSTD_LEVEL = 3;
+
+    abstract byte[] compress(byte[] raw);
+
+    /**
+     * @param length size of the chunk before compression
+     */
+    abstract byte[] decompress(byte[] compressed, int length);
+}
@@ -0,0 +1,144 @@
+package com.cyurtoz.capture;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An open capture file: its index is read on open, chunks are read and decompressed on request.
+ * Reads are positional, so several chunks can be read concurrently. See {@link CaptureWriter} for the layout.
+ */
+public class CaptureFile implements AutoCloseable {
+
+    @Getter
+    private final Path path;
+    @Getter
+    private final CaptureCompression compression;
+    private final List<Chunk> chunks;
+    @Getter
+    private final List<String> topics;
+    @Getter
+    private final long size;
+    private final FileChannel channel;
+
+    private CaptureFile(Path path, CaptureCompression compression, List<Chunk> chunks, List<String> topics, long size,
+                        FileChannel channel) {
+        this.path = path;
+        this.compression = compression;
+        this.chunks = chunks;
+        this.topics = topics;
+        this.size = size;
+        this.channel = channel;
+    }
+
+    public static CaptureFile open(Path path) throws IOException {
+        var channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            var header = read(channel, 0, 2 * Integer.BYTES + 1);
+            if (size < header.capacity() + CaptureWriter.TRAILER_BYTES || header.getInt() != CaptureWriter.MAGIC)
+                throw new IOException(path + " is not a capture file");
+            if (header.getInt() != CaptureWriter.VERSION) throw new IOException(path + " has an unknown version");
+            var compression = CaptureCompression.values()[header.get()];
+
+            var trailer = read(channel, size - CaptureWriter.TRAILER_BYTES, CaptureWriter.TRAILER_BYTES);
+            long indexPosition = trailer.getLong();
+            int chunkCount = trailer.getInt();
+            if (trailer.getInt() != CaptureWriter.MAGIC) throw new IOException(path + " is incomplete");
+
+            var index = read(channel, indexPosition, (int) (size - CaptureWriter.TRAILER_BYTES - indexPosition));
+            var chunks = new ArrayList<Chunk>(chunkCount);
+            for (int i = 0; i < chunkCount; i++) {
+                chunks.add(new Chunk(index.getLong(), index.getInt(), index.getInt(), index.getInt(),
+                        index.getLong(), index.getLong()));
+            }
+            int topicCount = index.getInt();
+            var topics = new ArrayList<String>(topicCount);
+            for (int i = 0; i < topicCount; i++) {
+                var name = new byte[index.getInt()];
+                index.get(name);
+                topics.add(new String(name, StandardCharsets.UTF_8));
+            }
+            return new CaptureFile(path, compression, chunks, topics, size, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the decompressed chunk, positioned at its first message
+     */
+    public ByteBuffer readChunk(int chunkIndex) throws IOException {
+        var chunk = chunks.get(chunkIndex);
+        var compressed = read(channel, chunk.getPosition(), chunk.getCompressedLength());
+        return ByteBuffer.wrap(compression.decompress(compressed.array(), chunk.getLength()));
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        var buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Capture file ends unexpectedly");
+        }
+        return buffer.flip();
+    }
+
+    int getChunkCount() {
+        return chunks.size();
+    }
+
+    Chunk getChunk(int chunkIndex) {
+        return chunks.get(chunkIndex);
+    }
+
+    public long getMessages() {
+        return chunks.stream().mapToLong(Chunk::getMessages).sum();
+    }
+
+    public long getFirstTimestamp() {
+        return chunks.isEmpty() ? -1L : chunks.get(0).getFirstTimestamp();
+    }
+
+    public long getLastTimestamp() {
+        return chunks.isEmpty() ? -1L : chunks.get(chunks.size() - 1).getLastTimestamp();
+    }
+
+    /**
+     * @return the first chunk that may hold messages at or after {@code timestamp}, or the chunk count if none does
+     */
+    public int findChunk(long timestamp) {
+        int low = 0;
+        int high = chunks.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (chunks.get(middle).getLastTimestamp() < timestamp) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static class Chunk {
+        private final long position;
+        private final int compressedLength;
+        private final int length;
+        private final int messages;
+        private final long firstTimestamp;
+        private final long lastTimestamp;
+    }
+}
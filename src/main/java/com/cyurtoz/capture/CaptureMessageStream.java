@@ -0,0 +1,198 @@
+package com.cyurtoz.capture;
+
+import com.cyurtoz.filter.MessageFilter;
+import com.cyurtoz.kafka.MessageStream;
+import com.cyurtoz.model.KafkaMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Plays a time range of a capture file. Chunks are read strictly in file order, and the next chunk is read and
+ * decompressed in the background while the current one is being played, so the cursor never waits on the disk.
+ * The index lets seeks go straight to the right chunk in both directions.
+ */
+@Slf4j
+class CaptureMessageStream implements MessageStream<byte[]> {
+
+    private static final long AWAIT_INTERVAL_MS = 5L;
+
+    private final CaptureFile file;
+    private final Set<String> topics;
+    private final long startTimestamp;
+    private final long endTimestamp;
+    private final MessageFilter filter;
+    private final Executor reader;
+    private long skipBefore;
+    private int chunkIndex;
+    private ByteBuffer current;
+    private CompletableFuture<ByteBuffer> next;
+    private KafkaMessage<byte[]> head;
+    private boolean finished;
+    private long fetchedMessages;
+    private long fetchedBytes;
+    private boolean closed;
+
+    CaptureMessageStream(CaptureFile file, Set<String> topics, long startTimestamp, long endTimestamp,
+                         MessageFilter filter, Executor reader) {
+        this.file = file;
+        this.topics = topics;
+        this.startTimestamp = startTimestamp;
+        this.endTimestamp = endTimestamp;
+        this.filter = filter;
+        this.reader = reader;
+        moveTo(startTimestamp);
+    }
+
+    private void moveTo(long timestamp) {
+        skipBefore = Math.max(timestamp, startTimestamp);
+        chunkIndex = file.findChunk(skipBefore);
+        current = null;
+        head = null;
+        finished = false;
+        next = chunkIndex < file.getChunkCount() ? readAsync(chunkIndex) : null;
+    }
+
+    private CompletableFuture<ByteBuffer> readAsync(int index) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return file.readChunk(index);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, reader);
+    }
+
+    /**
+     * Decodes until the next message that belongs to the playback, without waiting for a chunk that is still read.
+     */
+    private void advance() {
+        while (head == null && !finished && !closed) {
+            if (current == null || !current.hasRemaining()) {
+                if (!nextChunk()) return;
+                continue;
+            }
+            var message = decode(current);
+            fetchedMessages++;
+            fetchedBytes += message.rawSize();
+            if (message.getTimestamp() > endTimestamp) {
+                finished = true;
+            } else if (message.getTimestamp() >= skipBefore && (topics == null || topics.contains(message.getTopic()))
+                    && filter.accept(message)) {
+                head = message;
+            }
+        }
+    }
+
+    /**
+     * @return false if the next chunk is not read yet
+     */
+    private boolean nextChunk() {
+        if (next == null) {
+            finished = true;
+            return true;
+        }
+        if (!next.isDone()) return false;
+        try {
+            current = next.join();
+        } catch (RuntimeException e) {
+            log.warn("Reading chunk {} of {} failed, ending the playback", chunkIndex, file.getPath(), e);
+            finished = true;
+            return true;
+        }
+        chunkIndex++;
+        next = chunkIndex < file.getChunkCount() ? readAsync(chunkIndex) : null;
+        return true;
+    }
+
+    private static KafkaMessage<byte[]> decode(ByteBuffer chunk) {
+        long timestamp = chunk.getLong();
+        byte[] topic = readBytes(chunk);
+        int partition = chunk.getInt();
+        byte[] key = readBytes(chunk);
+        byte[] value = readBytes(chunk);
+        var headers = new RecordHeaders();
+        int headerCount = chunk.getInt();
+        for (int i = 0; i < headerCount; i++) {
+            headers.add(new String(readBytes(chunk), StandardCharsets.UTF_8), readBytes(chunk));
+        }
+        return new KafkaMessage<>(timestamp, value, key, headers,
+                topic == null ? null : new String(topic, StandardCharsets.UTF_8), partition < 0 ? null : partition);
+    }
+
+    private static byte[] readBytes(ByteBuffer chunk) {
+        int length = chunk.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        chunk.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public synchronized KafkaMessage<byte[]> peek() {
+        advance();
+        return head;
+    }
+
+    @Override
+    public synchronized KafkaMessage<byte[]> poll() {
+        advance();
+        var message = head;
+        head = null;
+        return message;
+    }
+
+    @Override
+    public synchronized boolean isFinished() {
+        advance();
+        return closed || (head == null && finished);
+    }
+
+    @Override
+    public boolean awaitNext(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            while (peek() == null && !isFinished() && System.nanoTime() < deadline) {
+                Thread.sleep(AWAIT_INTERVAL_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return peek() != null;
+    }
+
+    @Override
+    public synchronized boolean seek(long timestamp) {
+        moveTo(timestamp);
+        return true;
+    }
+
+    @Override
+    public synchronized long getFetchedMessages() {
+        return fetchedMessages;
+    }
+
+    @Override
+    public synchronized long getFetchedBytes() {
+        return fetchedBytes;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            file.close();
+        } catch (IOException e) {
+            log.warn("Closing {} failed", file.getPath(), e);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.cyurtoz.capture;
+
+import com.cyurtoz.filter.MessageFilter;
+import com.cyurtoz.kafka.MessageSource;
+import com.cyurtoz.kafka.MessageStream;
+import com.cyurtoz.kafka.SourceKafkaService;
+import com.cyurtoz.model.CaptureInfo;
+import com.cyurtoz.model.KafkaMessage;
+import com.cyurtoz.util.DaemonThreads;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Saves windows of the source cluster to capture files and plays them back where the cluster is out of reach.
+ * Captures are files named {@code <name>.capture} in {@code capture.directory}; copying such a file into the
+ * directory of another instance makes it available there.
+ */
+@Service
+@Slf4j
+public class CaptureService {
+
+    private static final String SUFFIX = ".capture";
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9._-]+");
+    private static final Duration EXPORT_WAIT = Duration.ofSeconds(1);
+
+    private final SourceKafkaService sourceKafkaService;
+    private final Path directory;
+    private final int chunkBytes;
+    private final ExecutorService reader;
+
+    public CaptureService(SourceKafkaService sourceKafkaService,
+                          @Value("${kafka-playback-service.capture.directory:${java.io.tmpdir}/kafka-playback-captures}") String directory,
+                          @Value("${kafka-playback-service.capture.chunk-bytes:1048576}") int chunkBytes,
+                          @Value("${kafka-playback-service.capture.read-threads:2}") int readThreads) {
+        this.sourceKafkaService = sourceKafkaService;
+        this.directory = Paths.get(directory);
+        this.chunkBytes = chunkBytes;
+        this.reader = Executors.newFixedThreadPool(Math.max(readThreads, 1), DaemonThreads.numbered("capture-read-"));
+    }
+
+    /**
+     * Fetches the window of the given topics and writes it to a new capture file.
+     */
+    public CaptureInfo export(String name, Collection<String> sourceTopics, Date startDate, Date endDate,
+                              CaptureCompression compression, MessageFilter filter) {
+        var file = pathOf(name);
+        if (Files.exists(file)) throw new RuntimeException("Capture " + name + " already exists.");
+        CaptureWriter writer;
+        try {
+            Files.createDirectories(directory);
+            writer = new CaptureWriter(file, compression, chunkBytes);
+        } catch (IOException e) {
+            throw new RuntimeException("Capture " + name + " could not be created.", e);
+        }
+        try (MessageStream<byte[]> stream = sourceKafkaService.streamRawMessagesBetween(sourceTopics, startDate, endDate, filter)) {
+            while (stream.awaitNext(EXPORT_WAIT) || !stream.isFinished()) {
+                KafkaMessage<byte[]> message;
+                while ((message = stream.poll()) != null) writer.append(message);
+            }
+            writer.close();
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw new RuntimeException("Capture " + name + " could not be written.", e);
+        }
+        var info = describe(name);
+        log.info("Captured {} messages of {} into {}, {} bytes", info.getMessages(), sourceTopics, file, info.getSizeBytes());
+        return info;
+    }
+
+    public List<CaptureInfo> listCaptures() {
+        if (!Files.isDirectory(directory)) return new ArrayList<>();
+        try (var files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(fileName -> fileName.endsWith(SUFFIX))
+                    .sorted(Comparator.naturalOrder())
+                    .map(fileName -> describe(fileName.substring(0, fileName.length() - SUFFIX.length())))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new RuntimeException("Captures could not be listed.", e);
+        }
+    }
+
+    public CaptureInfo describe(String name) {
+        try (var capture = open(name)) {
+            var info = new CaptureInfo();
+            info.setName(name);
+            info.setTopics(capture.getTopics());
+            info.setCompression(capture.getCompression().name());
+            info.setMessages(capture.getMessages());
+            info.setSizeBytes(capture.getSize());
+            info.setFirstTimestamp(capture.getFirstTimestamp());
+            info.setLastTimestamp(capture.getLastTimestamp());
+            return info;
+        } catch (IOException e) {
+            throw new RuntimeException("Capture " + name + " could not be read.", e);
+        }
+    }
+
+    /**
+     * @return the capture as a source; topics that were not captured yield no messages
+     */
+    public MessageSource sourceOf(String name) {
+        var file = pathOf(name);
+        if (!Files.exists(file)) throw new RuntimeException("Capture " + name + " could not be found.");
+        return (sourceTopics, startDate, endDate, filter) -> {
+            try {
+                return new CaptureMessageStream(CaptureFile.open(file), new HashSet<>(sourceTopics),
+                        startDate.getTime(), endDate.getTime(), filter, reader);
+            } catch (IOException e) {
+                throw new RuntimeException("Capture " + name + " could not be read.", e);
+            }
+        };
+    }
+
+    private CaptureFile open(String name) throws IOException {
+        var file = pathOf(name);
+        if (!Files.exists(file)) throw new RuntimeException("Capture " + name + " could not be found.");
+        return CaptureFile.open(file);
+    }
+
+    private Path pathOf(String name) {
+        if (!NAME.matcher(name).matches())
+            throw new RuntimeException("Capture names may only contain letters, digits, '.', '_' and '-'.");
+        return directory.resolve(name + SUFFIX);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reader.shutdownNow();
+    }
+}
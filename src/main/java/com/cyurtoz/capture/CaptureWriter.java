@@ -0,0 +1,147 @@
+package com.cyurtoz.capture;
+
+import com.cyurtoz.model.KafkaMessage;
+import org.apache.kafka.common.header.Header;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes messages in timestamp order into a capture file.
+ * <p>
+ * File layout: magic (int), version (int) and compression (byte), then the compressed chunks back to back, then the
+ * index and a trailer. Each index entry holds the chunk's position (long), compressed and uncompressed size (int),
+ * message count (int) and first and last timestamp (long); the index ends with the captured topics.
+ * The trailer holds the index position (long), the chunk count (int) and the magic again.
+ * <p>
+ * Chunk layout, before compression, per message: timestamp (long), topic, partition (int, -1 for none), key, value,
+ * header count (int) and per header its name and value, where every byte field is an int length (-1 for null)
+ * followed by the bytes.
+ * <p>
+ * The file is written under a temporary name and only appears under its own name once it is closed.
+ */
+public class CaptureWriter implements AutoCloseable {
+
+    static final int MAGIC = 0x4B504346;
+    static final int VERSION = 1;
+    static final int TRAILER_BYTES = Long.BYTES + 2 * Integer.BYTES;
+
+    private final Path file;
+    private final Path tempFile;
+    private final CaptureCompression compression;
+    private final int chunkBytes;
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream chunk;
+    private final DataOutputStream chunkOut;
+    private final List<CaptureFile.Chunk> index;
+    private final Set<String> topics;
+    private long position;
+    private int chunkMessages;
+    private long chunkFirstTimestamp;
+    private long chunkLastTimestamp;
+
+    public CaptureWriter(Path file, CaptureCompression compression, int chunkBytes) throws IOException {
+        this.file = file;
+        this.tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        this.compression = compression;
+        this.chunkBytes = chunkBytes;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), 64 * 1024));
+        this.chunk = new ByteArrayOutputStream(chunkBytes + chunkBytes / 4);
+        this.chunkOut = new DataOutputStream(chunk);
+        this.index = new ArrayList<>();
+        this.topics = new LinkedHashSet<>();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeByte(compression.ordinal());
+        this.position = 2 * Integer.BYTES + 1;
+    }
+
+    public void append(KafkaMessage<byte[]> message) throws IOException {
+        if (chunkMessages == 0) chunkFirstTimestamp = message.getTimestamp();
+        chunkLastTimestamp = message.getTimestamp();
+        chunkOut.writeLong(message.getTimestamp());
+        writeBytes(message.getTopic() == null ? null : message.getTopic().getBytes(StandardCharsets.UTF_8));
+        chunkOut.writeInt(message.getPartition() == null ? -1 : message.getPartition());
+        writeBytes(message.getKey());
+        writeBytes(message.getPayload());
+        var headers = message.getHeaders() == null ? new Header[0] : message.getHeaders().toArray();
+        chunkOut.writeInt(headers.length);
+        for (Header header : headers) {
+            writeBytes(header.key().getBytes(StandardCharsets.UTF_8));
+            writeBytes(header.value());
+        }
+        if (message.getTopic() != null) topics.add(message.getTopic());
+        chunkMessages++;
+        if (chunk.size() >= chunkBytes) flushChunk();
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes == null) {
+            chunkOut.writeInt(-1);
+        } else {
+            chunkOut.writeInt(bytes.length);
+            chunkOut.write(bytes);
+        }
+    }
+
+    private void flushChunk() throws IOException {
+        if (chunkMessages == 0) return;
+        byte[] raw = chunk.toByteArray();
+        byte[] compressed = compression.compress(raw);
+        out.write(compressed);
+        index.add(new CaptureFile.Chunk(position, compressed.length, raw.length, chunkMessages,
+                chunkFirstTimestamp, chunkLastTimestamp));
+        position += compressed.length;
+        chunk.reset();
+        chunkMessages = 0;
+    }
+
+    /**
+     * Writes the last chunk and the index and moves the file to its final name.
+     */
+    @Override
+    public void close() throws IOException {
+        flushChunk();
+        for (CaptureFile.Chunk entry : index) {
+            out.writeLong(entry.getPosition());
+            out.writeInt(entry.getCompressedLength());
+            out.writeInt(entry.getLength());
+            out.writeInt(entry.getMessages());
+            out.writeLong(entry.getFirstTimestamp());
+            out.writeLong(entry.getLastTimestamp());
+        }
+        out.writeInt(topics.size());
+        for (String topic : topics) {
+            var name = topic.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(name.length);
+            out.write(name);
+        }
+        out.writeLong(position);
+        out.writeInt(index.size());
+        out.writeInt(MAGIC);
+        out.close();
+        Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Drops a capture that could not be completed.
+     */
+    public void abort() {
+        try {
+            out.close();
+            Files.deleteIfExists(tempFile);
+        } catch (IOException ignored) {
+            // nothing left to clean up
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.cyurtoz.cluster;
+
+import com.cyurtoz.model.PlaybackDefinition;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * A message on the control topic. Every instance reads every command, including its own.
+ */
+@Data
+public class ClusterCommand {
+
+    public enum Type {HEARTBEAT, START, PAUSE, RESUME, SPEED, STOP}
+
+    private Type type;
+    private String sender;
+    private String playbackId;
+    /**
+     * Wall clock time the command takes effect at; for {@link Type#START} the time the window start is played at.
+     */
+    private long epochMs;
+    /**
+     * For {@link Type#START}: the playback, and the instances sharing its partitions in share order.
+     */
+    private PlaybackDefinition definition;
+    private List<String> members;
+    /**
+     * For {@link Type#SPEED}.
+     */
+    private double speed;
+
+    public static ClusterCommand of(Type type, String playbackId) {
+        var command = new ClusterCommand();
+        command.type = type;
+        command.playbackId = playbackId;
+        command.epochMs = System.currentTimeMillis();
+        return command;
+    }
+}
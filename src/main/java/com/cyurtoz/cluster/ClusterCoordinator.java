@@ -0,0 +1,222 @@
+package com.cyurtoz.cluster;
+
+import com.cyurtoz.util.DaemonThreads;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Lets several instances of the service play one playback together through a single-partition control topic.
+ * Every instance announces itself with a heartbeat and reads all commands from the end of the topic, so all of them
+ * see the same commands in the same order. A playback is started with the list of live members; each member plays
+ * its share of the partitions, and all of them pace against the same start epoch, so the playback keeps its global
+ * timing. The instances' clocks are assumed to be synchronized, for example with NTP.
+ */
+@Component
+@Slf4j
+public class ClusterCoordinator {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
+    private static final long SEND_TIMEOUT_SECONDS = 10;
+
+    private final boolean enabled;
+    private final String bootstrapServers;
+    private final String controlTopic;
+    private final String instanceId;
+    private final long heartbeatMs;
+    private final ObjectMapper mapper;
+    private final Map<String, Long> lastSeen;
+    private final List<Consumer<ClusterCommand>> listeners;
+    private Producer<String, byte[]> producer;
+    private KafkaConsumer<String, byte[]> consumer;
+    private ScheduledExecutorService heartbeat;
+    private Thread poller;
+    private volatile boolean running;
+
+    public ClusterCoordinator(@Value("${kafka-playback-service.cluster.enabled:false}") boolean enabled,
+                              @Value("${kafka-playback-service.cluster.bootstrap-servers:${kafka-playback-service.source.bootstrap-servers}}") String bootstrapServers,
+                              @Value("${kafka-playback-service.cluster.control-topic:kafka-playback-control}") String controlTopic,
+                              @Value("${kafka-playback-service.cluster.instance-id:${random.uuid}}") String instanceId,
+                              @Value("${kafka-playback-service.cluster.heartbeat-ms:2000}") long heartbeatMs) {
+        this.enabled = enabled;
+        this.bootstrapServers = bootstrapServers;
+        this.controlTopic = controlTopic;
+        this.instanceId = instanceId;
+        this.heartbeatMs = heartbeatMs;
+        this.mapper = new ObjectMapper();
+        this.lastSeen = new ConcurrentHashMap<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+        if (enabled) start();
+    }
+
+    private void start() {
+        consumer = new KafkaConsumer<>(consumerProperties());
+        var partition = new TopicPartition(controlTopic, 0);
+        var partitions = consumer.partitionsFor(controlTopic);
+        if (partitions == null || partitions.isEmpty())
+            throw new RuntimeException("Control topic " + controlTopic + " could not be found.");
+        consumer.assign(List.of(partition));
+        consumer.seekToEnd(List.of(partition));
+        consumer.position(partition);
+        producer = new KafkaProducer<>(producerProperties());
+        running = true;
+        poller = DaemonThreads.single("playback-cluster").newThread(this::poll);
+        poller.start();
+        heartbeat = Executors.newSingleThreadScheduledExecutor(DaemonThreads.single("playback-cluster-heartbeat"));
+        heartbeat.scheduleWithFixedDelay(this::sendHeartbeat, 0, heartbeatMs, TimeUnit.MILLISECONDS);
+        log.info("Joined cluster on {} as {}", controlTopic, instanceId);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * Called on the control thread with every command other than heartbeats.
+     */
+    public void addListener(Consumer<ClusterCommand> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return this instance and the instances heard from within three heartbeats, in the same order everywhere
+     */
+    public List<String> members() {
+        long since = System.currentTimeMillis() - 3 * heartbeatMs;
+        var members = new ArrayList<String>();
+        members.add(instanceId);
+        lastSeen.forEach((member, seen) -> {
+            if (seen >= since && !member.equals(instanceId)) members.add(member);
+        });
+        members.sort(String::compareTo);
+        return members;
+    }
+
+    /**
+     * Sends a command to every instance, this one included, and waits until the control topic has it.
+     */
+    public void publish(ClusterCommand command) {
+        if (!enabled) throw new RuntimeException("Cluster mode is disabled.");
+        command.setSender(instanceId);
+        try {
+            producer.send(new ProducerRecord<>(controlTopic, 0, command.getPlaybackId(), mapper.writeValueAsBytes(command)))
+                    .get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (IOException | ExecutionException | TimeoutException e) {
+            throw new RuntimeException("Command could not be sent to the cluster.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Command could not be sent to the cluster.", e);
+        }
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} that corresponds to the wall clock time {@code epochMs} on this instance
+     */
+    public static long nanosAt(long epochMs) {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(epochMs - System.currentTimeMillis());
+    }
+
+    private void sendHeartbeat() {
+        try {
+            publish(ClusterCommand.of(ClusterCommand.Type.HEARTBEAT, null));
+        } catch (RuntimeException e) {
+            log.warn("Heartbeat could not be sent", e);
+        }
+    }
+
+    private void poll() {
+        try {
+            while (running) {
+                for (var record : consumer.poll(POLL_TIMEOUT)) {
+                    ClusterCommand command;
+                    try {
+                        command = mapper.readValue(record.value(), ClusterCommand.class);
+                    } catch (IOException e) {
+                        log.warn("Unreadable command at offset {} of {}", record.offset(), controlTopic, e);
+                        continue;
+                    }
+                    if (command.getSender() != null) lastSeen.put(command.getSender(), System.currentTimeMillis());
+                    if (command.getType() == ClusterCommand.Type.HEARTBEAT) continue;
+                    log.info("{} of {} from {}", command.getType(), command.getPlaybackId(), command.getSender());
+                    for (var listener : listeners) {
+                        try {
+                            listener.accept(command);
+                        } catch (RuntimeException e) {
+                            log.warn("{} of {} failed", command.getType(), command.getPlaybackId(), e);
+                        }
+                    }
+                }
+            }
+        } catch (WakeupException e) {
+            log.debug("Control consumer was woken up");
+        } finally {
+            consumer.close();
+        }
+    }
+
+    private Properties consumerProperties() {
+        var props = new Properties();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        return props;
+    }
+
+    private Properties producerProperties() {
+        var props = new Properties();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.LINGER_MS_CONFIG, 0);
+        return props;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) return;
+        running = false;
+        heartbeat.shutdownNow();
+        consumer.wakeup();
+        try {
+            poller.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        producer.close();
+    }
+}
@@ -0,0 +1,13 @@
+package com.cyurtoz.dispatch;
+
+import com.cyurtoz.model.KafkaMessage;
+
+@FunctionalInterface
+public interface MessageSink<T> {
+
+    /**
+     * @param dueNanos the {@link System#nanoTime()} at which the message was meant to go out
+     * @return false if the message cannot be taken right now; it is offered again shortly
+     */
+    boolean send(KafkaMessage<T> message, long dueNanos);
+}
@@ -0,0 +1,62 @@
+package com.cyurtoz.dispatch;
+
+import com.cyurtoz.model.KafkaMessage;
+import com.cyurtoz.model.PacingSettings;
+
+/**
+ * Decides when the next message of a playback is due.
+ */
+public interface Pacer {
+
+    /**
+     * Called with the next message whenever the cursor runs. Returning a time that is not after {@code nowNanos}
+     * means the message is sent right away; pacers may treat that as a commitment and update their state.
+     * The cursor passes the end of its batch window, so {@code nowNanos} may lie a little ahead of the actual time.
+     *
+     * @return the {@link System#nanoTime()} at which the message is due
+     */
+    long dueNanos(KafkaMessage<?> message, long nowNanos);
+
+    /**
+     * Freezes the pacer's notion of source time until {@link #resume}.
+     */
+    default void pause(long nowNanos) {
+    }
+
+    default void resume(long nowNanos) {
+    }
+
+    /**
+     * @return false if this pacer does not pace by speed
+     */
+    default boolean setSpeed(double speed, long nowNanos) {
+        return false;
+    }
+
+    /**
+     * Makes {@code timestamp} the source time that corresponds to {@code nowNanos}.
+     */
+    default void seek(long timestamp, long nowNanos) {
+    }
+
+    /**
+     * @return the rate this pacer aims for in its own unit, or 0 if it has none
+     */
+    default double getTargetRate() {
+        return 0;
+    }
+
+    static Pacer create(PacingSettings settings, double speed) {
+        switch (settings.getPacingMode()) {
+            case UNTHROTTLED:
+                return (message, nowNanos) -> nowNanos;
+            case RATE:
+                if (settings.getTargetRate() <= 0) throw new RuntimeException("Target rate must be positive.");
+                return new TokenBucketPacer(settings.getTargetRate(), settings.getBurst(),
+                        settings.getRateUnit() == PacingSettings.RateUnit.BYTES);
+            default:
+                if (speed <= 0) throw new RuntimeException("Playback speed must be positive.");
+                return new SpeedPacer(speed);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.cyurtoz.dispatch;
+
+import com.cyurtoz.kafka.MessageStream;
+import com.cyurtoz.model.KafkaMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Position of a playback in its message sequence.
+ * Each time it is woken by the dispatcher it sends every message its {@link Pacer} considers due and registers
+ * itself again for the next one, so a playback occupies a single wheel entry regardless of its length.
+ * A run sends at most {@code MAX_MESSAGES_PER_RUN} messages before yielding, so unthrottled playbacks do not
+ * hold a dispatch thread for their whole length.
+ * <p>
+ * Due times come from the pacer's anchor, so lateness never accumulates across wake-ups. A run sends every message
+ * due within the dispatcher's batch window, asking the pacer as if it were already the end of that window, so the
+ * messages go out as one producer batch. The wheel runs tasks somewhat after their deadlines; the cursor keeps an
+ * average of that lag and registers its wake-ups that much earlier, which centres the timing error on zero.
+ * <p>
+ * A sink that cannot take a message, because too many sends are in flight, never blocks the dispatch thread: the
+ * cursor keeps the message at the head with the due time its pacer already committed to and retries shortly.
+ * <p>
+ * Pause, resume, speed changes and seeks only move the cursor and its pacer; nothing is refetched. Every
+ * registration carries a generation number, so wake-ups registered before such a change are ignored.
+ */
+@Slf4j
+public class PlaybackCursor<T> {
+
+    private static final long STREAM_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SINK_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int MAX_MESSAGES_PER_RUN = 1000;
+    private static final long UNTIMED = Long.MIN_VALUE;
+    private static final int LAG_SMOOTHING = 8;
+
+    private final MessageStream<T> stream;
+    private final TimingWheelDispatcher dispatcher;
+    private final Pacer pacer;
+    private final MessageSink<T> sink;
+    private final Runnable onFinish;
+    private final RateMeter rateMeter;
+    private final long batchWindowNanos;
+    private final long maxLagNanos;
+    private long generation;
+    private long wakeLagNanos;
+    private boolean headRefused;
+    private long headDueNanos;
+    private volatile long dispatched;
+    private volatile long position = -1L;
+    private volatile boolean paused;
+    private volatile boolean cancelled;
+
+    public PlaybackCursor(MessageStream<T> stream, TimingWheelDispatcher dispatcher, Pacer pacer,
+                          MessageSink<T> sink, Runnable onFinish) {
+        this.stream = stream;
+        this.dispatcher = dispatcher;
+        this.pacer = pacer;
+        this.sink = sink;
+        this.onFinish = onFinish;
+        this.rateMeter = new RateMeter();
+        this.batchWindowNanos = dispatcher.getBatchWindowNanos();
+        this.maxLagNanos = dispatcher.getTickNanos();
+    }
+
+    public synchronized void start() {
+        wakeAt(System.nanoTime());
+    }
+
+    public void cancel() {
+        cancelled = true;
+        stream.close();
+    }
+
+    public void pause() {
+        pause(System.nanoTime());
+    }
+
+    /**
+     * Pauses as of {@code atNanos}, which may lie a little in the past, so instances sharing a playback pause at
+     * the same source time.
+     */
+    public synchronized void pause(long atNanos) {
+        if (paused) return;
+        paused = true;
+        generation++;
+        pacer.pause(atNanos);
+    }
+
+    public void resume() {
+        resume(System.nanoTime());
+    }
+
+    public synchronized void resume(long atNanos) {
+        if (!paused) return;
+        paused = false;
+        pacer.resume(atNanos);
+        wakeAt(System.nanoTime());
+    }
+
+    /**
+     * @return false if the pacer does not pace by speed
+     */
+    public boolean setSpeed(double speed) {
+        return setSpeed(speed, System.nanoTime());
+    }
+
+    public synchronized boolean setSpeed(double speed, long atNanos) {
+        if (!pacer.setSpeed(speed, atNanos)) return false;
+        if (!paused) wakeAt(System.nanoTime());
+        return true;
+    }
+
+    /**
+     * Continues from the first message at or after {@code timestamp}.
+     *
+     * @return false if the stream cannot move to that timestamp
+     */
+    public synchronized boolean seek(long timestamp) {
+        if (!stream.seek(timestamp)) return false;
+        headRefused = false;
+        long now = System.nanoTime();
+        pacer.seek(timestamp, now);
+        if (!paused) wakeAt(now);
+        return true;
+    }
+
+    public long getDispatched() {
+        return dispatched;
+    }
+
+    /**
+     * @return timestamp of the last dispatched message, or -1 before the first one
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public RateMeter getRateMeter() {
+        return rateMeter;
+    }
+
+    public double getTargetRate() {
+        return pacer.getTargetRate();
+    }
+
+    /**
+     * Registers the next wake-up ahead of {@code nanos} by the average lag, unless that is already past; the
+     * wake-up then falls back to {@code nanos}, so an early wake-up is followed by at most one more.
+     */
+    private void wakeAt(long nanos) {
+        long scheduled = ++generation;
+        long now = System.nanoTime();
+        if (nanos - now <= 0) {
+            dispatcher.schedule(() -> wake(scheduled, UNTIMED), nanos);
+            return;
+        }
+        long deadline = nanos - wakeLagNanos - now > 0 ? nanos - wakeLagNanos : nanos;
+        dispatcher.schedule(() -> wake(scheduled, deadline), deadline);
+    }
+
+    private synchronized void wake(long scheduled, long deadline) {
+        if (cancelled || paused || scheduled != generation) return;
+        if (deadline != UNTIMED) {
+            long lag = Math.min(Math.max(System.nanoTime() - deadline, 0), maxLagNanos);
+            wakeLagNanos += (lag - wakeLagNanos) / LAG_SMOOTHING;
+        }
+        try {
+            KafkaMessage<T> next;
+            int sentInRun = 0;
+            while ((next = stream.peek()) != null) {
+                long now = System.nanoTime();
+                long dueNanos = headDueNanos;
+                if (!headRefused) {
+                    long horizon = now + batchWindowNanos;
+                    dueNanos = pacer.dueNanos(next, horizon);
+                    if (dueNanos - horizon > 0) {
+                        wakeAt(dueNanos);
+                        return;
+                    }
+                }
+                headRefused = !sink.send(next, dueNanos);
+                if (headRefused) {
+                    headDueNanos = dueNanos;
+                    wakeAt(now + SINK_RETRY_NANOS);
+                    return;
+                }
+                stream.poll();
+                rateMeter.record(next, now, dueNanos);
+                position = next.getTimestamp();
+                dispatched++;
+                if (cancelled) return;
+                if (++sentInRun >= MAX_MESSAGES_PER_RUN) {
+                    wakeAt(now);
+                    return;
+                }
+            }
+            if (stream.isFinished()) {
+                finish();
+            } else {
+                wakeAt(System.nanoTime() + STREAM_RETRY_NANOS);
+            }
+        } catch (Exception e) {
+            log.warn("Playback aborted after {} messages", dispatched, e);
+            finish();
+        }
+    }
+
+    /**
+     * Not for cancelled cursors: their stream only looks finished because it was closed, and whoever cancelled them
+     * cleans up.
+     */
+    private void finish() {
+        if (cancelled) return;
+        stream.close();
+        onFinish.run();
+    }
+}
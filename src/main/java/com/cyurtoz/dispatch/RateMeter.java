@@ -0,0 +1,67 @@
+package com.cyurtoz.dispatch;
+
+import com.cyurtoz.model.KafkaMessage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts dispatched messages and bytes per one-second window and keeps the rates of the last complete window,
+ * together with how far from their due time its messages were sent, early or late.
+ */
+public class RateMeter {
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private long windowStartNanos;
+    private long windowMessages;
+    private long windowBytes;
+    private long windowErrorNanos;
+    private long windowMaxErrorNanos;
+    private volatile long messagesPerSecond;
+    private volatile long bytesPerSecond;
+    private volatile long meanTimingErrorNanos;
+    private volatile long maxTimingErrorNanos;
+
+    /**
+     * Only called by the thread currently running the cursor.
+     */
+    void record(KafkaMessage<?> message, long nowNanos, long dueNanos) {
+        if (windowStartNanos == 0) windowStartNanos = nowNanos;
+        long elapsed = nowNanos - windowStartNanos;
+        if (elapsed >= WINDOW_NANOS) {
+            messagesPerSecond = windowMessages * WINDOW_NANOS / elapsed;
+            bytesPerSecond = windowBytes * WINDOW_NANOS / elapsed;
+            meanTimingErrorNanos = windowMessages == 0 ? 0 : windowErrorNanos / windowMessages;
+            maxTimingErrorNanos = windowMaxErrorNanos;
+            windowStartNanos = nowNanos;
+            windowMessages = 0;
+            windowBytes = 0;
+            windowErrorNanos = 0;
+            windowMaxErrorNanos = 0;
+        }
+        long error = Math.abs(nowNanos - dueNanos);
+        windowMessages++;
+        windowBytes += message.rawSize();
+        windowErrorNanos += error;
+        windowMaxErrorNanos = Math.max(windowMaxErrorNanos, error);
+    }
+
+    public long getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @return mean absolute difference between send and due time
+     */
+    public long getMeanTimingErrorNanos() {
+        return meanTimingErrorNanos;
+    }
+
+    public long getMaxTimingErrorNanos() {
+        return maxTimingErrorNanos;
+    }
+}
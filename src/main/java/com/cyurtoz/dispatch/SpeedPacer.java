@@ -0,0 +1,66 @@
+package com.cyurtoz.dispatch;
+
+import com.cyurtoz.model.KafkaMessage;
+
+/**
+ * Keeps the original gaps between messages, divided by {@code speed}.
+ * Source time is mapped to wall time through an anchor: the source timestamp that corresponds to
+ * {@code anchorNanos}. Due times are measured from the anchor rather than from the previous message, so
+ * re-registering does not accumulate delay. Pausing, changing the speed and seeking only move the anchor.
+ */
+public class SpeedPacer implements Pacer {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private double speed;
+    private boolean started;
+    private boolean paused;
+    private double anchorTimestamp;
+    private long anchorNanos;
+
+    public SpeedPacer(double speed) {
+        this.speed = speed;
+    }
+
+    @Override
+    public long dueNanos(KafkaMessage<?> message, long nowNanos) {
+        if (!started) anchor(message.getTimestamp(), nowNanos);
+        return anchorNanos + (long) ((message.getTimestamp() - anchorTimestamp) * NANOS_PER_MILLI / speed);
+    }
+
+    @Override
+    public void pause(long nowNanos) {
+        if (paused) return;
+        if (started) anchor(sourceTimestamp(nowNanos), nowNanos);
+        paused = true;
+    }
+
+    @Override
+    public void resume(long nowNanos) {
+        if (!paused) return;
+        paused = false;
+        anchorNanos = nowNanos;
+    }
+
+    @Override
+    public boolean setSpeed(double speed, long nowNanos) {
+        if (started && !paused) anchor(sourceTimestamp(nowNanos), nowNanos);
+        this.speed = speed;
+        return true;
+    }
+
+    @Override
+    public void seek(long timestamp, long nowNanos) {
+        anchor(timestamp, nowNanos);
+    }
+
+    private double sourceTimestamp(long nowNanos) {
+        return paused ? anchorTimestamp : anchorTimestamp + (nowNanos - anchorNanos) * speed / NANOS_PER_MILLI;
+    }
+
+    private void anchor(double timestamp, long nowNanos) {
+        started = true;
+        anchorTimestamp = timestamp;
+        anchorNanos = nowNanos;
+    }
+}
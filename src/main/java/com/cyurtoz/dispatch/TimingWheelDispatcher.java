@@ -0,0 +1,140 @@
+package com.cyurtoz.dispatch;
+
+import com.cyurtoz.util.DaemonThreads;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel shared by every playback.
+ * A single ticker thread owns the wheel and hands expired tasks to a worker pool sized to the cores.
+ * Registration and expiry are O(1); each playback keeps at most one entry in the wheel at a time.
+ * <p>
+ * A task runs up to a tick after its deadline. Cursors send everything falling due within {@code batch-window-micros}
+ * of a wake-up together, which trades timing accuracy for fewer wake-ups and larger producer batches at high speeds:
+ * 0 sends every message at its own wake-up, and the default of one tick sends what falls due before the next one.
+ */
+@Component
+@Slf4j
+public class TimingWheelDispatcher {
+
+    private final long tickNanos;
+    private final long batchWindowNanos;
+    private final int mask;
+    private final List<List<Timeout>> wheel;
+    private final Queue<Timeout> pending;
+    private final ExecutorService workers;
+    private final Thread ticker;
+    private final long startNanos;
+    private volatile boolean running;
+    private long tick;
+
+    public TimingWheelDispatcher(@Value("${kafka-playback-service.dispatch.tick-micros:1000}") long tickMicros,
+                                 @Value("${kafka-playback-service.dispatch.wheel-size:512}") int wheelSize,
+                                 @Value("${kafka-playback-service.dispatch.worker-threads:0}") int workerThreads,
+                                 @Value("${kafka-playback-service.dispatch.batch-window-micros:-1}") long batchWindowMicros) {
+        this.tickNanos = TimeUnit.MICROSECONDS.toNanos(tickMicros);
+        this.batchWindowNanos = batchWindowMicros < 0 ? tickNanos : TimeUnit.MICROSECONDS.toNanos(batchWindowMicros);
+        int size = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+        this.mask = size - 1;
+        this.wheel = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) wheel.add(new ArrayList<>());
+        this.pending = new ConcurrentLinkedQueue<>();
+        int threads = workerThreads > 0 ? workerThreads : Runtime.getRuntime().availableProcessors();
+        this.workers = Executors.newFixedThreadPool(threads, DaemonThreads.numbered("playback-dispatch-"));
+        this.startNanos = System.nanoTime();
+        this.running = true;
+        this.ticker = DaemonThreads.numbered("playback-ticker-").newThread(this::runTicker);
+        this.ticker.start();
+        log.info("Timing wheel started - {} buckets of {} us, {} dispatch threads, {} us batch window", size,
+                tickMicros, threads, TimeUnit.NANOSECONDS.toMicros(batchWindowNanos));
+    }
+
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    /**
+     * @return how far ahead of a wake-up messages are still sent in it
+     */
+    public long getBatchWindowNanos() {
+        return batchWindowNanos;
+    }
+
+    /**
+     * Runs {@code task} on a dispatch thread once {@link System#nanoTime()} reaches {@code deadlineNanos}.
+     */
+    public void schedule(Runnable task, long deadlineNanos) {
+        if (deadlineNanos - System.nanoTime() <= 0) {
+            workers.execute(task);
+        } else {
+            pending.add(new Timeout(task, deadlineNanos));
+        }
+    }
+
+    private void runTicker() {
+        while (running) {
+            waitUntil(startNanos + (tick + 1) * tickNanos);
+            transferPending();
+            expire(wheel.get((int) (tick & mask)));
+            tick++;
+        }
+    }
+
+    private void waitUntil(long deadlineNanos) {
+        long remaining;
+        while (running && (remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            long deadlineTick = Math.max((timeout.deadlineNanos - startNanos) / tickNanos, tick);
+            timeout.remainingRounds = (deadlineTick - tick) / wheel.size();
+            wheel.get((int) (deadlineTick & mask)).add(timeout);
+        }
+    }
+
+    private void expire(List<Timeout> bucket) {
+        int kept = 0;
+        for (Timeout timeout : bucket) {
+            if (timeout.remainingRounds <= 0) {
+                workers.execute(timeout.task);
+            } else {
+                timeout.remainingRounds--;
+                bucket.set(kept++, timeout);
+            }
+        }
+        bucket.subList(kept, bucket.size()).clear();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        ticker.interrupt();
+        workers.shutdownNow();
+    }
+
+    private static final class Timeout {
+        private final Runnable task;
+        private final long deadlineNanos;
+        private long remainingRounds;
+
+        private Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+}
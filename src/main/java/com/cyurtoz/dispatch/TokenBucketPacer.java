@@ -0,0 +1,51 @@
+package com.cyurtoz.dispatch;
+
+import com.cyurtoz.model.KafkaMessage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends at a fixed rate of messages or bytes per second.
+ * The bucket holds up to {@code burst} tokens and refills continuously; a message is due once the bucket
+ * holds its cost. A message costing more than the whole bucket is sent when the bucket is full.
+ */
+public class TokenBucketPacer implements Pacer {
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double ratePerSecond;
+    private final double capacity;
+    private final boolean countBytes;
+    private double tokens;
+    private long lastRefillNanos;
+    private boolean started;
+
+    public TokenBucketPacer(double ratePerSecond, long burst, boolean countBytes) {
+        this.ratePerSecond = ratePerSecond;
+        this.capacity = burst > 0 ? burst : Math.max(ratePerSecond, 1);
+        this.countBytes = countBytes;
+    }
+
+    @Override
+    public long dueNanos(KafkaMessage<?> message, long nowNanos) {
+        if (!started) {
+            started = true;
+            tokens = capacity;
+            lastRefillNanos = nowNanos;
+        }
+        tokens = Math.min(capacity, tokens + (nowNanos - lastRefillNanos) * ratePerSecond / NANOS_PER_SECOND);
+        lastRefillNanos = nowNanos;
+        double cost = countBytes ? message.rawSize() : 1;
+        double needed = Math.min(cost, capacity);
+        if (tokens >= needed) {
+            tokens -= cost;
+            return nowNanos;
+        }
+        return nowNanos + (long) Math.ceil((needed - tokens) * NANOS_PER_SECOND / ratePerSecond);
+    }
+
+    @Override
+    public double getTargetRate() {
+        return ratePerSecond;
+    }
+}
@@ -0,0 +1,24 @@
+package com.cyurtoz.filter;
+
+import com.cyurtoz.model.KafkaMessage;
+import org.apache.kafka.common.utils.Utils;
+
+/**
+ * Keeps a fixed share of records, chosen by the murmur2 hash of the key (the value for records without a key).
+ * The choice only depends on the record, so every replay of a window samples the same records.
+ */
+final class HashSampler implements MessageFilter {
+
+    private final int threshold;
+
+    HashSampler(double sampleRate) {
+        this.threshold = (int) (sampleRate * Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean accept(KafkaMessage<byte[]> message) {
+        byte[] bytes = message.getKey() != null ? message.getKey() : message.getPayload();
+        if (bytes == null) return true;
+        return Utils.toPositive(Utils.murmur2(bytes)) < threshold;
+    }
+}
@@ -0,0 +1,38 @@
+package com.cyurtoz.filter;
+
+import com.cyurtoz.model.KafkaMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Keeps records carrying a header, optionally with a given value. The last header of that name counts.
+ */
+final class HeaderFilter implements MessageFilter {
+
+    private final String name;
+    private final byte[] value;
+
+    private HeaderFilter(String name, byte[] value) {
+        this.name = name;
+        this.value = value;
+    }
+
+    /**
+     * @param header {@code name=value}, or {@code name} to only require the header
+     */
+    static HeaderFilter parse(String header) {
+        int separator = header.indexOf('=');
+        if (separator == 0 || header.isBlank()) throw new RuntimeException("Header filter " + header + " has no name.");
+        if (separator < 0) return new HeaderFilter(header, null);
+        return new HeaderFilter(header.substring(0, separator),
+                header.substring(separator + 1).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public boolean accept(KafkaMessage<byte[]> message) {
+        if (message.getHeaders() == null) return false;
+        var header = message.getHeaders().lastHeader(name);
+        return header != null && (value == null || Arrays.equals(value, header.value()));
+    }
+}
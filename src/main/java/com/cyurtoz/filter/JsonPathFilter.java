@@ -0,0 +1,51 @@
+package com.cyurtoz.filter;
+
+import com.cyurtoz.model.KafkaMessage;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * Keeps JSON records whose field at a dotted path has a given value.
+ * The value is read with a streaming parser that skips unrelated subtrees and stops at the field,
+ * so no object graph is built. Only object fields are supported, not array indices.
+ * Scalars are compared by their text, so {@code 42}, {@code true} and {@code null} match those literals.
+ */
+final class JsonPathFilter implements MessageFilter {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private final String[] path;
+    private final String expected;
+
+    JsonPathFilter(String jsonPath, String expected) {
+        var trimmed = jsonPath.startsWith("$.") ? jsonPath.substring(2) : jsonPath;
+        if (trimmed.isEmpty()) throw new RuntimeException("JSON path " + jsonPath + " does not name a field.");
+        this.path = trimmed.split("\\.");
+        this.expected = expected;
+    }
+
+    @Override
+    public boolean accept(KafkaMessage<byte[]> message) {
+        if (message.getPayload() == null) return false;
+        try (var parser = FACTORY.createParser(message.getPayload())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return false;
+            int depth = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var name = parser.getCurrentName();
+                var token = parser.nextToken();
+                if (!path[depth].equals(name)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                if (depth == path.length - 1) return token.isScalarValue() && expected.equals(parser.getText());
+                if (token != JsonToken.START_OBJECT) return false;
+                depth++;
+            }
+            return false;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.cyurtoz.filter;
+
+import com.cyurtoz.model.KafkaMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps records by key. Records without a key are dropped.
+ */
+final class KeyFilter {
+
+    private KeyFilter() {
+    }
+
+    static MessageFilter oneOf(Collection<String> keys) {
+        Set<ByteBuffer> accepted = keys.stream()
+                .map(key -> ByteBuffer.wrap(key.getBytes(StandardCharsets.UTF_8)))
+                .collect(Collectors.toSet());
+        return message -> message.getKey() != null && accepted.contains(ByteBuffer.wrap(message.getKey()));
+    }
+
+    static MessageFilter matching(String regex) {
+        var pattern = Pattern.compile(regex);
+        return message -> message.getKey() != null
+                && pattern.matcher(new String(message.getKey(), StandardCharsets.UTF_8)).matches();
+    }
+}
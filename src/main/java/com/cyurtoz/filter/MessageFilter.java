@@ -0,0 +1,48 @@
+package com.cyurtoz.filter;
+
+import com.cyurtoz.model.FilterSettings;
+import com.cyurtoz.model.KafkaMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides on the raw record whether it is played, before it is decoded or buffered.
+ */
+@FunctionalInterface
+public interface MessageFilter {
+
+    MessageFilter ACCEPT_ALL = message -> true;
+
+    boolean accept(KafkaMessage<byte[]> message);
+
+    /**
+     * Cheap conditions are checked first, so a record rejected by its key is never parsed.
+     */
+    static MessageFilter create(FilterSettings settings) {
+        var filters = new ArrayList<MessageFilter>();
+        if (settings.getSampleRate() <= 0 || settings.getSampleRate() > 1)
+            throw new RuntimeException("Sample rate must be greater than 0 and at most 1.");
+        if (settings.getSampleRate() < 1) filters.add(new HashSampler(settings.getSampleRate()));
+        if (settings.getKeys() != null && !settings.getKeys().isEmpty()) filters.add(KeyFilter.oneOf(settings.getKeys()));
+        if (settings.getKeyPattern() != null) filters.add(KeyFilter.matching(settings.getKeyPattern()));
+        if (settings.getHeaders() != null) settings.getHeaders().forEach(header -> filters.add(HeaderFilter.parse(header)));
+        if (settings.getJsonPath() != null) {
+            if (settings.getJsonValue() == null) throw new RuntimeException("A JSON path needs a JSON value to compare with.");
+            filters.add(new JsonPathFilter(settings.getJsonPath(), settings.getJsonValue()));
+        }
+        return allOf(filters);
+    }
+
+    static MessageFilter allOf(List<MessageFilter> filters) {
+        if (filters.isEmpty()) return ACCEPT_ALL;
+        if (filters.size() == 1) return filters.get(0);
+        var array = filters.toArray(new MessageFilter[0]);
+        return message -> {
+            for (MessageFilter filter : array) {
+                if (!filter.accept(message)) return false;
+            }
+            return true;
+        };
+    }
+}
@@ -2,6 +2,8 @@ package com.cyurtoz.handler;
 
 import com.cyurtoz.model.KafkaMessage;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 public interface CustomPlaybackHandler<T> {
@@ -9,4 +11,17 @@ public interface CustomPlaybackHandler<T> {
     Optional<KafkaMessage<T>> handle(KafkaMessage<T> source);
 
     Class<T> getType();
+
+    /**
+     * Handles consecutive messages of the same key group at once, for handlers that enrich in bulk.
+     * Batches of different key groups run in parallel, batches of the same group one after another.
+     * Timestamps should be kept, since results are merged back into timestamp order.
+     *
+     * @return the messages to play, in order; dropped messages are left out
+     */
+    default List<KafkaMessage<T>> handleBatch(List<KafkaMessage<T>> batch) {
+        var results = new ArrayList<KafkaMessage<T>>(batch.size());
+        for (var message : batch) handle(message).ifPresent(results::add);
+        return results;
+    }
 }
@@ -0,0 +1,58 @@
+package com.cyurtoz.handler;
+
+import com.cyurtoz.kafka.MessageStream;
+import com.cyurtoz.util.DaemonThreads;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Worker pool shared by every playback with a {@link CustomPlaybackHandler}.
+ * The pool is sized to the cores unless {@code handler.threads} says otherwise; each playback spreads its
+ * messages over as many lanes as there are workers. The sources are distributed to the lanes by a quarter as many
+ * threads, which take turns between the playbacks.
+ */
+@Component
+@Slf4j
+public class HandlerExecutor {
+
+    private final int threads;
+    private final int batchSize;
+    private final int readAhead;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService distributors;
+
+    public HandlerExecutor(@Value("${kafka-playback-service.handler.threads:0}") int threads,
+                           @Value("${kafka-playback-service.handler.batch-size:256}") int batchSize,
+                           @Value("${kafka-playback-service.source.read-ahead:10000}") int readAhead) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.batchSize = Math.max(batchSize, 1);
+        this.readAhead = readAhead;
+        this.workers = Executors.newFixedThreadPool(this.threads, DaemonThreads.numbered("playback-handler-"));
+        this.distributors = Executors.newScheduledThreadPool(Math.max(this.threads / 4, 1),
+                DaemonThreads.numbered("playback-handler-input-"));
+        log.info("Handler pool started - {} threads, batches of {}", this.threads, this.batchSize);
+    }
+
+    /**
+     * Starts handling {@code source} in the background.
+     *
+     * @return the handled messages in timestamp order; closing it closes {@code source}
+     */
+    public <T> MessageStream<T> start(MessageStream<T> source, CustomPlaybackHandler<T> handler) {
+        var pipeline = new HandlerPipeline<>(source, handler, workers, threads, batchSize, readAhead);
+        pipeline.start(distributors);
+        return pipeline;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        distributors.shutdownNow();
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,244 @@
+package com.cyurtoz.handler;
+
+import com.cyurtoz.kafka.CooperativeTask;
+import com.cyurtoz.kafka.MergingMessageStream;
+import com.cyurtoz.kafka.MessageBuffer;
+import com.cyurtoz.kafka.MessageStream;
+import com.cyurtoz.model.KafkaMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a {@link CustomPlaybackHandler} over a stream on a worker pool while the stream is being played.
+ * Messages are spread over lanes by key, falling back to the source partition for messages without a key,
+ * so messages of one key are handled in order while different keys are handled in parallel.
+ * Each lane is handed to the workers in batches and its results are merged back into timestamp order.
+ * <p>
+ * Every lane holds at most its share of the read-ahead, and the distributor waits for the lane of the next message
+ * to make room. Since the source comes in timestamp order, a lane that has handled all its input cannot receive
+ * anything earlier than the last distributed message, which becomes its watermark; lanes that few or no keys map
+ * to therefore do not hold back the merge.
+ */
+@Slf4j
+public class HandlerPipeline<T> extends CooperativeTask implements MessageStream<T> {
+
+    private static final long SOURCE_DELAY_MS = 1L;
+    private static final long FULL_DELAY_MS = 1L;
+
+    private final MessageStream<T> source;
+    private final CustomPlaybackHandler<T> handler;
+    private final Executor workers;
+    private final int batchSize;
+    private final int capacity;
+    private final List<Lane> lanes;
+    private final MergingMessageStream<T> merged;
+    private volatile boolean closed;
+    private long distributed;
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    HandlerPipeline(MessageStream<T> source, CustomPlaybackHandler<T> handler, Executor workers, int laneCount,
+                    int batchSize, int readAhead) {
+        this.source = source;
+        this.handler = handler;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.capacity = Math.max(readAhead / laneCount, batchSize);
+        this.lanes = new ArrayList<>(laneCount);
+        for (int i = 0; i < laneCount; i++) lanes.add(new Lane());
+        var outputs = new ArrayList<MessageBuffer<T>>(laneCount);
+        lanes.forEach(lane -> outputs.add(lane.output));
+        this.merged = new MergingMessageStream<>(outputs, this::stop);
+    }
+
+    /**
+     * Distributes the next part of the source over the lanes, in steps on the distributor scheduler like a fetcher.
+     */
+    @Override
+    protected long step() {
+        try {
+            for (int i = 0; i < batchSize * lanes.size(); i++) {
+                if (closed) return finish();
+                var message = source.peek();
+                if (message == null) {
+                    lanes.forEach(Lane::flush);
+                    advanceWatermarks();
+                    return source.isFinished() ? finish() : SOURCE_DELAY_MS;
+                }
+                var lane = laneOf(message);
+                if (lane.isFull()) {
+                    lanes.forEach(Lane::flush);
+                    advanceWatermarks();
+                    return FULL_DELAY_MS;
+                }
+                source.poll();
+                lane.add(message);
+                lastTimestamp = message.getTimestamp();
+                if (++distributed % batchSize == 0) lanes.forEach(Lane::flushIfStarving);
+            }
+            advanceWatermarks();
+            return 0;
+        } catch (Exception e) {
+            log.warn("Distributing messages to {} failed", handler.getClass().getSimpleName(), e);
+            return finish();
+        }
+    }
+
+    @Override
+    protected void abort() {
+        finish();
+    }
+
+    private long finish() {
+        lanes.forEach(Lane::finish);
+        return DONE;
+    }
+
+    private Lane laneOf(KafkaMessage<T> message) {
+        int hash = message.getKey() != null ? Arrays.hashCode(message.getKey()) : Objects.hashCode(message.getPartition());
+        return lanes.get(Math.floorMod(hash, lanes.size()));
+    }
+
+    private void advanceWatermarks() {
+        for (Lane lane : lanes) {
+            if (lane.isIdle()) lane.output.advanceWatermark(lastTimestamp);
+        }
+    }
+
+    @Override
+    public KafkaMessage<T> peek() {
+        return merged.peek();
+    }
+
+    @Override
+    public KafkaMessage<T> poll() {
+        return merged.poll();
+    }
+
+    @Override
+    public boolean isFinished() {
+        return merged.isFinished();
+    }
+
+    @Override
+    public boolean awaitNext(Duration timeout) {
+        return merged.awaitNext(timeout);
+    }
+
+    @Override
+    public boolean seek(long timestamp) {
+        return merged.seek(timestamp);
+    }
+
+    @Override
+    public long getFetchedMessages() {
+        return source.getFetchedMessages();
+    }
+
+    @Override
+    public long getFetchedBytes() {
+        return source.getFetchedBytes();
+    }
+
+    @Override
+    public int getBuffered() {
+        return source.getBuffered() + merged.getBuffered();
+    }
+
+    @Override
+    public void close() {
+        merged.close();
+    }
+
+    private void stop() {
+        closed = true;
+        source.close();
+    }
+
+    /**
+     * Collects the messages of one lane into batches and handles them on the workers one batch at a time,
+     * so at most one worker touches the lane's output.
+     */
+    private final class Lane implements Runnable {
+        private final MessageBuffer<T> output = new MessageBuffer<>(capacity);
+        private final Queue<List<KafkaMessage<T>>> batches = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        /**
+         * Messages handed to the workers whose results are not in the output yet.
+         */
+        private final AtomicInteger handling = new AtomicInteger();
+        private List<KafkaMessage<T>> pending = new ArrayList<>();
+        private volatile boolean last;
+
+        void add(KafkaMessage<T> message) {
+            pending.add(message);
+            if (pending.size() >= batchSize) flush();
+        }
+
+        boolean isFull() {
+            return pending.size() + handling.get() + output.size() >= capacity;
+        }
+
+        /**
+         * @return true if every message distributed to the lane so far has been handled
+         */
+        boolean isIdle() {
+            return pending.isEmpty() && handling.get() == 0;
+        }
+
+        void flush() {
+            if (pending.isEmpty()) return;
+            handling.addAndGet(pending.size());
+            batches.add(pending);
+            pending = new ArrayList<>(batchSize);
+            schedule();
+        }
+
+        /**
+         * Hands over a partial batch when the merge is waiting on this lane.
+         */
+        void flushIfStarving() {
+            if (output.peek() == null && batches.isEmpty()) flush();
+        }
+
+        void finish() {
+            flush();
+            last = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) workers.execute(this);
+        }
+
+        @Override
+        public void run() {
+            try {
+                List<KafkaMessage<T>> batch;
+                while (!closed && (batch = batches.poll()) != null) {
+                    try {
+                        handler.handleBatch(batch).forEach(output::add);
+                    } catch (RuntimeException e) {
+                        log.warn("{} failed on a batch of {} messages, skipping it",
+                                handler.getClass().getSimpleName(), batch.size(), e);
+                    } finally {
+                        handling.addAndGet(-batch.size());
+                    }
+                }
+                if (closed || (last && batches.isEmpty())) output.finish();
+            } finally {
+                scheduled.set(false);
+                if (!output.isFinished() && (!batches.isEmpty() || last)) schedule();
+            }
+        }
+    }
+}
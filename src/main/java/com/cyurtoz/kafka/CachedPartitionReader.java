@@ -0,0 +1,97 @@
+package com.cyurtoz.kafka;
+
+import com.cyurtoz.cache.Segment;
+import com.cyurtoz.cache.SegmentReader;
+import com.cyurtoz.filter.MessageFilter;
+import com.cyurtoz.model.KafkaMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Feeds the cached part of a partition's window from local segment files into a {@link MessageBuffer},
+ * a bounded number of records per step. Rejected records move the buffer's watermark, as in {@link PartitionFetcher}.
+ */
+@Slf4j
+class CachedPartitionReader<T> extends CooperativeTask {
+
+    private static final int STEP_RECORDS = 1000;
+    private static final long FULL_DELAY_MS = 1L;
+
+    private final List<Segment> segments;
+    private final PartitionWindow window;
+    private final MessageBuffer<T> buffer;
+    private final MessageFilter filter;
+    private final Function<KafkaMessage<byte[]>, KafkaMessage<T>> converter;
+    private final Runnable release;
+    private volatile boolean closed;
+    private boolean finished;
+    private int segmentIndex;
+    private SegmentReader reader;
+
+    /**
+     * @param release unpins {@code segments} in the cache, called once the reader is done with them
+     */
+    CachedPartitionReader(List<Segment> segments, PartitionWindow window, MessageBuffer<T> buffer,
+                          MessageFilter filter, Function<KafkaMessage<byte[]>, KafkaMessage<T>> converter,
+                          Runnable release) {
+        this.segments = segments;
+        this.window = window;
+        this.buffer = buffer;
+        this.filter = filter;
+        this.converter = converter;
+        this.release = release;
+    }
+
+    @Override
+    protected long step() {
+        try {
+            for (int read = 0; read < STEP_RECORDS; read++) {
+                if (closed) return finish();
+                if (reader == null) {
+                    if (segmentIndex == segments.size()) return finish();
+                    reader = segments.get(segmentIndex++).open();
+                }
+                if (!reader.next()) {
+                    reader = null;
+                    continue;
+                }
+                long offset = reader.offset();
+                if (offset < window.getStartOffset()) continue;
+                if (offset > window.getEndOffset()) return finish();
+                var message = reader.message();
+                if (window.admit(offset, message.getTimestamp()) && filter.accept(message)) {
+                    buffer.add(converter.apply(message), message.rawSize());
+                } else {
+                    buffer.advanceWatermark(message.getTimestamp());
+                }
+                if (window.isComplete(offset)) return finish();
+                if (buffer.isFull()) return FULL_DELAY_MS;
+            }
+            return 0;
+        } catch (Exception e) {
+            log.warn("Reading cached segments {} failed", segments.get(0).getTopicPartition(), e);
+            return finish();
+        }
+    }
+
+    @Override
+    protected void abort() {
+        finish();
+    }
+
+    private long finish() {
+        buffer.finish();
+        if (!finished) {
+            finished = true;
+            reader = null;
+            release.run();
+        }
+        return DONE;
+    }
+
+    void close() {
+        closed = true;
+    }
+}
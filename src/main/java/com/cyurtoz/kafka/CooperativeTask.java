@@ -0,0 +1,58 @@
+package com.cyurtoz.kafka;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A long-running background job, such as a partition fetch, that runs in short steps on a shared scheduler instead
+ * of owning a thread. Steps never block: a task with nothing to do asks to run again a little later, so a small,
+ * fixed number of threads serves however many playbacks are running.
+ */
+public abstract class CooperativeTask implements Runnable {
+
+    protected static final long DONE = -1L;
+
+    private ScheduledExecutorService scheduler;
+
+    public void start(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        scheduler.execute(this);
+    }
+
+    /**
+     * Runs every step on the calling thread, for tests and benchmarks.
+     */
+    public void runToCompletion() {
+        long delayMs;
+        while ((delayMs = step()) != DONE) {
+            if (delayMs > 0) LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(delayMs));
+        }
+    }
+
+    @Override
+    public final void run() {
+        long delayMs = step();
+        if (delayMs == DONE) return;
+        try {
+            if (delayMs == 0) scheduler.execute(this);
+            else scheduler.schedule(this, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            abort();
+        }
+    }
+
+    /**
+     * Does a bounded amount of work. Failures are handled here; once it returns {@link #DONE} the task has released
+     * everything it holds and is not run again.
+     *
+     * @return milliseconds until the next step, 0 to run again right after the other tasks, or {@link #DONE}
+     */
+    protected abstract long step();
+
+    /**
+     * Releases what the task holds when it can no longer be scheduled because the scheduler shut down.
+     */
+    protected abstract void abort();
+}
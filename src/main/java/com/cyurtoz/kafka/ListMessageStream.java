@@ -0,0 +1,69 @@
+package com.cyurtoz.kafka;
+
+import com.cyurtoz.model.KafkaMessage;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * A {@link MessageStream} over a window that was fetched completely up front.
+ */
+public class ListMessageStream<T> implements MessageStream<T> {
+
+    private final List<KafkaMessage<T>> messages;
+    private int index;
+
+    public ListMessageStream(List<KafkaMessage<T>> messages) {
+        this.messages = messages;
+    }
+
+    @Override
+    public KafkaMessage<T> peek() {
+        return index < messages.size() ? messages.get(index) : null;
+    }
+
+    @Override
+    public KafkaMessage<T> poll() {
+        return index < messages.size() ? messages.get(index++) : null;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return index >= messages.size();
+    }
+
+    @Override
+    public boolean awaitNext(Duration timeout) {
+        return !isFinished();
+    }
+
+    /**
+     * Binary search over the window, so seeking works in both directions.
+     */
+    @Override
+    public boolean seek(long timestamp) {
+        int low = 0;
+        int high = messages.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (messages.get(middle).getTimestamp() < timestamp) low = middle + 1;
+            else high = middle;
+        }
+        index = low;
+        return true;
+    }
+
+    @Override
+    public long getFetchedMessages() {
+        return messages.size();
+    }
+
+    @Override
+    public int getBuffered() {
+        return messages.size() - index;
+    }
+
+    @Override
+    public void close() {
+    }
+}
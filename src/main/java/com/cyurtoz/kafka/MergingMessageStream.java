@@ -0,0 +1,151 @@
+package com.cyurtoz.kafka;
+
+import com.cyurtoz.model.KafkaMessage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * K-way merge of several ordered lanes into one stream in global timestamp order.
+ * A message is only released once every unfinished lane has a head to compare against or a watermark at or after
+ * its timestamp, so a lane that is still being fetched holds the merge back instead of being overtaken.
+ */
+public class MergingMessageStream<T> implements MessageStream<T> {
+
+    private static final long AWAIT_INTERVAL_MS = 5L;
+
+    private final List<MessageBuffer<T>> lanes;
+    private final PriorityQueue<MessageBuffer<T>> ready;
+    private final List<MessageBuffer<T>> waiting;
+    private final Runnable onClose;
+    private long position = Long.MIN_VALUE;
+    private long skipBefore = Long.MIN_VALUE;
+    private volatile boolean closed;
+
+    public MergingMessageStream(List<MessageBuffer<T>> lanes, Runnable onClose) {
+        this.lanes = lanes;
+        this.ready = new PriorityQueue<>(Math.max(lanes.size(), 1),
+                Comparator.comparingLong(lane -> lane.peek().getTimestamp()));
+        this.waiting = new ArrayList<>(lanes);
+        this.onClose = onClose;
+    }
+
+    @Override
+    public synchronized KafkaMessage<T> peek() {
+        if (closed || !skip()) return null;
+        var lane = ready.peek();
+        return lane == null ? null : lane.peek();
+    }
+
+    @Override
+    public synchronized KafkaMessage<T> poll() {
+        if (closed || !skip() || ready.isEmpty()) return null;
+        var message = take();
+        position = message.getTimestamp();
+        return message;
+    }
+
+    /**
+     * Only forward seeks are possible, since earlier messages are no longer buffered.
+     * Messages before {@code timestamp} are dropped as they arrive.
+     */
+    @Override
+    public synchronized boolean seek(long timestamp) {
+        if (timestamp < position) return false;
+        skipBefore = timestamp;
+        return true;
+    }
+
+    /**
+     * Drops heads that lie before the seek target.
+     *
+     * @return true if the merge can decide what comes next
+     */
+    private boolean skip() {
+        while (refresh()) {
+            var lane = ready.peek();
+            if (lane == null || lane.peek().getTimestamp() >= skipBefore) return true;
+            take();
+        }
+        return false;
+    }
+
+    private KafkaMessage<T> take() {
+        var lane = ready.poll();
+        var message = lane.poll();
+        if (lane.peek() != null) ready.add(lane);
+        else waiting.add(lane);
+        return message;
+    }
+
+    @Override
+    public synchronized boolean isFinished() {
+        return closed || (skip() && ready.isEmpty());
+    }
+
+    @Override
+    public boolean awaitNext(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            while (peek() == null && !isFinished() && System.nanoTime() < deadline) {
+                Thread.sleep(AWAIT_INTERVAL_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return peek() != null;
+    }
+
+    /**
+     * Moves lanes that received a head into the heap and drops drained ones.
+     *
+     * @return true if every remaining lane has a head or a watermark that lets the earliest head go, i.e. the merge
+     * can decide what comes next
+     */
+    private boolean refresh() {
+        var iterator = waiting.iterator();
+        while (iterator.hasNext()) {
+            var lane = iterator.next();
+            if (lane.peek() != null) {
+                ready.add(lane);
+                iterator.remove();
+            } else if (lane.isDrained()) {
+                iterator.remove();
+            }
+        }
+        if (waiting.isEmpty()) return true;
+        var next = ready.peek();
+        if (next == null) return false;
+        long timestamp = next.peek().getTimestamp();
+        for (MessageBuffer<T> lane : waiting) {
+            if (lane.getWatermark() < timestamp) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public long getFetchedMessages() {
+        return lanes.stream().mapToLong(MessageBuffer::getAddedMessages).sum();
+    }
+
+    @Override
+    public long getFetchedBytes() {
+        return lanes.stream().mapToLong(MessageBuffer::getAddedBytes).sum();
+    }
+
+    @Override
+    public int getBuffered() {
+        return lanes.stream().mapToInt(MessageBuffer::size).sum();
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        onClose.run();
+        lanes.forEach(MessageBuffer::clear);
+    }
+}
@@ -0,0 +1,106 @@
+package com.cyurtoz.kafka;
+
+import com.cyurtoz.model.KafkaMessage;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Messages of one ordered lane, typically a single partition, handed from a fetch thread to a reader.
+ * The capacity is a soft limit: producers check {@link #isFull()} and stop fetching for the lane until it drains.
+ */
+public class MessageBuffer<T> {
+
+    private final Queue<KafkaMessage<T>> queue;
+    private final AtomicInteger size;
+    private final int capacity;
+    private volatile long addedMessages;
+    private volatile long addedBytes;
+    private volatile boolean finished;
+    private volatile long watermark = Long.MIN_VALUE;
+
+    public MessageBuffer(int capacity) {
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.size = new AtomicInteger();
+        this.capacity = capacity;
+    }
+
+    public void add(KafkaMessage<T> message) {
+        add(message, 0);
+    }
+
+    /**
+     * Only called by the single thread filling this lane.
+     *
+     * @param fetchedBytes size of the message as it was fetched, for metrics
+     */
+    public void add(KafkaMessage<T> message, long fetchedBytes) {
+        queue.add(message);
+        size.incrementAndGet();
+        addedMessages++;
+        addedBytes += fetchedBytes;
+    }
+
+    public KafkaMessage<T> peek() {
+        return queue.peek();
+    }
+
+    public KafkaMessage<T> poll() {
+        var message = queue.poll();
+        if (message != null) size.decrementAndGet();
+        return message;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public long getAddedMessages() {
+        return addedMessages;
+    }
+
+    public long getAddedBytes() {
+        return addedBytes;
+    }
+
+    public boolean isFull() {
+        return size.get() >= capacity;
+    }
+
+    /**
+     * Marks that nothing more will be added to this lane.
+     */
+    public void finish() {
+        finished = true;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Promises that nothing earlier than {@code timestamp} will be added, so an empty lane need not hold back a
+     * merge. Lanes that are filled in timestamp order by a single fetch never set one.
+     */
+    public void advanceWatermark(long timestamp) {
+        if (timestamp > watermark) watermark = timestamp;
+    }
+
+    public long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * @return true once the lane is finished and every message has been read
+     */
+    public boolean isDrained() {
+        return finished && queue.isEmpty();
+    }
+
+    public void clear() {
+        finished = true;
+        queue.clear();
+        size.set(0);
+    }
+}
@@ -0,0 +1,20 @@
+package com.cyurtoz.kafka;
+
+import com.cyurtoz.filter.MessageFilter;
+
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * Where the messages of a playback come from: the source cluster or a capture file.
+ */
+@FunctionalInterface
+public interface MessageSource {
+
+    /**
+     * Starts reading the window of the given topics and returns immediately.
+     * Messages come in timestamp order, as raw bytes, and carry the topic they were read from.
+     */
+    MessageStream<byte[]> streamRawMessagesBetween(Collection<String> sourceTopics, Date startDate, Date endDate,
+                                                   MessageFilter filter);
+}
@@ -0,0 +1,67 @@
+package com.cyurtoz.kafka;
+
+import com.cyurtoz.model.KafkaMessage;
+
+import java.time.Duration;
+
+/**
+ * A sequence of messages that is consumed while it is still being fetched.
+ * Reads never block; callers that run on a scheduler re-check later when nothing is buffered yet.
+ */
+public interface MessageStream<T> extends AutoCloseable {
+
+    /**
+     * @return the next message without removing it, or null if nothing is buffered right now
+     */
+    KafkaMessage<T> peek();
+
+    /**
+     * @return the next message, or null if nothing is buffered right now
+     */
+    KafkaMessage<T> poll();
+
+    /**
+     * @return true once the source is drained and every buffered message has been consumed
+     */
+    boolean isFinished();
+
+    /**
+     * Blocks until a message is buffered or the stream finishes.
+     *
+     * @return true if a message is available
+     */
+    boolean awaitNext(Duration timeout);
+
+    /**
+     * Moves the stream to the first message at or after {@code timestamp}.
+     *
+     * @return false if the stream cannot go there without refetching
+     */
+    default boolean seek(long timestamp) {
+        return false;
+    }
+
+    /**
+     * @return number of messages fetched from the source so far
+     */
+    default long getFetchedMessages() {
+        return 0;
+    }
+
+    /**
+     * @return raw size of the messages fetched from the source so far
+     */
+    default long getFetchedBytes() {
+        return 0;
+    }
+
+    /**
+     * @return number of messages fetched but not yet consumed
+     */
+    default int getBuffered() {
+        return 0;
+    }
+
+    @Override
+    void close();
+}
@@ -0,0 +1,296 @@
+package com.cyurtoz.kafka;
+
+import com.cyurtoz.model.KafkaMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link MessageStream} over a window that was fetched completely up front, kept outside the heap.
+ * Timestamps, source offsets, record positions, partitions and topics are held in primitive arrays; keys, values and headers are
+ * written back to back into direct buffers. Direct memory is taken from a budget shared by all windows; once it is
+ * used up, or the JVM runs out of direct memory first, further chunks are memory-mapped temporary files. A message only becomes a {@link KafkaMessage} again
+ * when it is read, once: the head decoded by {@link #peek} is kept until it is polled.
+ * <p>
+ * Reads and {@link #close} exclude each other, since a playback may be stopped while a dispatch thread reads it.
+ * <p>
+ * Entry layout: key, value, header count (int) and per header its name and value, where every byte field is an
+ * int length (-1 for null) followed by the bytes.
+ */
+@Slf4j
+public class OffHeapMessageStream implements MessageStream<byte[]> {
+
+    private static final int INITIAL_ENTRIES = 1024;
+    private static final int FIRST_CHUNK_BYTES = 1 << 20;
+    private static final String MAX_DIRECT_MEMORY_FLAG = "-XX:MaxDirectMemorySize=";
+
+    private final AtomicLong directBudget;
+    private final int maxChunkBytes;
+    private final Path spillDirectory;
+    private final List<ByteBuffer> chunks;
+    private final List<Path> spillFiles;
+    private final List<String> topics;
+    private long[] timestamps;
+    private long[] offsets;
+    private long[] positions;
+    private int[] partitions;
+    private int[] topicIndexes;
+    private ByteBuffer current;
+    private long directBytes;
+    private long fetchedBytes;
+    private int size;
+    private int index;
+    private KafkaMessage<byte[]> head;
+    private boolean closed;
+
+    /**
+     * @param directBudget  direct memory still available to windows, shared between them
+     * @param maxChunkBytes size chunks grow to; larger entries get a chunk of their own
+     */
+    public OffHeapMessageStream(AtomicLong directBudget, int maxChunkBytes, Path spillDirectory) {
+        this.directBudget = directBudget;
+        this.maxChunkBytes = maxChunkBytes;
+        this.spillDirectory = spillDirectory;
+        this.chunks = new ArrayList<>();
+        this.spillFiles = new ArrayList<>();
+        this.topics = new ArrayList<>();
+        this.timestamps = new long[INITIAL_ENTRIES];
+        this.offsets = new long[INITIAL_ENTRIES];
+        this.positions = new long[INITIAL_ENTRIES];
+        this.partitions = new int[INITIAL_ENTRIES];
+        this.topicIndexes = new int[INITIAL_ENTRIES];
+    }
+
+    /**
+     * Only called while the window is being fetched, before it is read.
+     */
+    public void add(KafkaMessage<byte[]> message) {
+        var headers = message.getHeaders() == null ? new Header[0] : message.getHeaders().toArray();
+        var headerNames = new byte[headers.length][];
+        int length = 3 * Integer.BYTES + lengthOf(message.getKey()) + lengthOf(message.getPayload());
+        for (int i = 0; i < headers.length; i++) {
+            headerNames[i] = headers[i].key().getBytes(StandardCharsets.UTF_8);
+            length += 2 * Integer.BYTES + headerNames[i].length + lengthOf(headers[i].value());
+        }
+        if (current == null || current.remaining() < length) current = allocate(length);
+        if (size == timestamps.length) grow();
+
+        timestamps[size] = message.getTimestamp();
+        offsets[size] = message.getOffset() == null ? -1L : message.getOffset();
+        positions[size] = ((long) (chunks.size() - 1) << 32) | current.position();
+        partitions[size] = message.getPartition() == null ? -1 : message.getPartition();
+        topicIndexes[size] = topicIndex(message.getTopic());
+        writeBytes(message.getKey());
+        writeBytes(message.getPayload());
+        current.putInt(headers.length);
+        for (int i = 0; i < headers.length; i++) {
+            writeBytes(headerNames[i]);
+            writeBytes(headers[i].value());
+        }
+        fetchedBytes += message.rawSize();
+        size++;
+    }
+
+    private ByteBuffer allocate(int length) {
+        int last = current == null ? FIRST_CHUNK_BYTES / 2 : current.capacity();
+        int capacity = Math.max(Math.min(last * 2, maxChunkBytes), length);
+        ByteBuffer chunk = null;
+        if (directBudget.addAndGet(-capacity) >= 0) {
+            try {
+                chunk = ByteBuffer.allocateDirect(capacity);
+                directBytes += capacity;
+            } catch (OutOfMemoryError e) {
+                log.warn("Direct memory ran out within the off-heap budget: {}", e.getMessage());
+            }
+        }
+        if (chunk == null) {
+            directBudget.addAndGet(capacity);
+            chunk = spill(capacity);
+        }
+        chunks.add(chunk);
+        return chunk;
+    }
+
+    /**
+     * @return {@code -XX:MaxDirectMemorySize} if set, otherwise the heap limit the JVM defaults it to
+     */
+    public static long maxDirectMemory() {
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (!argument.startsWith(MAX_DIRECT_MEMORY_FLAG)) continue;
+            var value = argument.substring(MAX_DIRECT_MEMORY_FLAG.length()).toLowerCase();
+            long unit = 1L;
+            switch (value.charAt(value.length() - 1)) {
+                case 'k': unit = 1L << 10; break;
+                case 'm': unit = 1L << 20; break;
+                case 'g': unit = 1L << 30; break;
+                case 't': unit = 1L << 40; break;
+                default: break;
+            }
+            return Long.parseLong(unit == 1L ? value : value.substring(0, value.length() - 1)) * unit;
+        }
+        return Runtime.getRuntime().maxMemory();
+    }
+
+    private ByteBuffer spill(int capacity) {
+        try {
+            var file = Files.createTempFile(spillDirectory, "playback-window-", ".spill");
+            spillFiles.add(file);
+            if (spillFiles.size() == 1) log.info("Off-heap budget used up, spilling window to {}", spillDirectory);
+            try (var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Window could not be spilled to " + spillDirectory, e);
+        }
+    }
+
+    private void grow() {
+        int capacity = timestamps.length * 2;
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        partitions = Arrays.copyOf(partitions, capacity);
+        topicIndexes = Arrays.copyOf(topicIndexes, capacity);
+    }
+
+    private int topicIndex(String topic) {
+        if (topic == null) return -1;
+        int topicIndex = topics.indexOf(topic);
+        if (topicIndex >= 0) return topicIndex;
+        topics.add(topic);
+        return topics.size() - 1;
+    }
+
+    private static int lengthOf(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private void writeBytes(byte[] bytes) {
+        if (bytes == null) {
+            current.putInt(-1);
+        } else {
+            current.putInt(bytes.length);
+            current.put(bytes);
+        }
+    }
+
+    private KafkaMessage<byte[]> read(int entry) {
+        long position = positions[entry];
+        var chunk = chunks.get((int) (position >>> 32)).duplicate();
+        chunk.position((int) position);
+        byte[] key = readBytes(chunk);
+        byte[] value = readBytes(chunk);
+        var headers = new RecordHeaders();
+        int headerCount = chunk.getInt();
+        for (int i = 0; i < headerCount; i++) {
+            headers.add(new String(readBytes(chunk), StandardCharsets.UTF_8), readBytes(chunk));
+        }
+        return new KafkaMessage<>(timestamps[entry], value, key, headers,
+                topicIndexes[entry] < 0 ? null : topics.get(topicIndexes[entry]),
+                partitions[entry] < 0 ? null : partitions[entry], offsets[entry] < 0 ? null : offsets[entry]);
+    }
+
+    private static byte[] readBytes(ByteBuffer chunk) {
+        int length = chunk.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        chunk.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public synchronized KafkaMessage<byte[]> peek() {
+        if (head == null && !closed && index < size) head = read(index);
+        return head;
+    }
+
+    @Override
+    public synchronized KafkaMessage<byte[]> poll() {
+        var message = peek();
+        if (message == null) return null;
+        head = null;
+        index++;
+        return message;
+    }
+
+    @Override
+    public synchronized boolean isFinished() {
+        return index >= size;
+    }
+
+    @Override
+    public boolean awaitNext(Duration timeout) {
+        return !isFinished();
+    }
+
+    /**
+     * Binary search over the timestamps, so seeking works in both directions.
+     */
+    @Override
+    public synchronized boolean seek(long timestamp) {
+        head = null;
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestamps[middle] < timestamp) low = middle + 1;
+            else high = middle;
+        }
+        index = low;
+        return true;
+    }
+
+    @Override
+    public long getFetchedMessages() {
+        return size;
+    }
+
+    @Override
+    public long getFetchedBytes() {
+        return fetchedBytes;
+    }
+
+    @Override
+    public int getBuffered() {
+        return size - index;
+    }
+
+    /**
+     * Returns the direct memory to the budget and deletes the spill files.
+     * The memory itself is freed once the buffers are garbage collected.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        head = null;
+        if (chunks.isEmpty()) return;
+        chunks.clear();
+        current = null;
+        size = 0;
+        directBudget.addAndGet(directBytes);
+        directBytes = 0;
+        for (Path file : spillFiles) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Spill file {} could not be deleted", file, e);
+            }
+        }
+        spillFiles.clear();
+    }
+}
@@ -0,0 +1,35 @@
+package com.cyurtoz.kafka;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Offsets of a partition that hold a time window, as resolved by the {@link TimestampIndex}.
+ * A range resolved from a sparse index may be a little wider than the window: the first record of the window lies
+ * between {@code startOffset} and {@code startReachedBy}, and the last one between {@code endNotBefore} and
+ * {@code endOffset}. The reader finds the exact bounds from the record timestamps, see {@link PartitionWindow}.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+class OffsetRange {
+    private final long startOffset;
+    private final long startReachedBy;
+    /**
+     * First offset that may be the last record of the window; all records before it are inside the window.
+     */
+    private final long endNotBefore;
+    private final long endOffset;
+
+    /**
+     * @return this range, starting exactly at {@code offset}
+     */
+    OffsetRange continueAt(long offset) {
+        return new OffsetRange(offset, offset, endNotBefore, endOffset);
+    }
+
+    boolean isEmpty() {
+        return startOffset > endOffset;
+    }
+}
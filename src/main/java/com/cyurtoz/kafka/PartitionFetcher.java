@@ -0,0 +1,156 @@
+package com.cyurtoz.kafka;
+
+import com.cyurtoz.cache.SegmentWriter;
+import com.cyurtoz.filter.MessageFilter;
+import com.cyurtoz.model.KafkaMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Reads a subset of a topic's partitions with its own consumer, one {@link MessageBuffer} per partition.
+ * Partitions whose buffer is full are paused rather than blocking the poll loop, so the other partitions
+ * of the same consumer keep flowing while the merge waits on them.
+ * Fetched records are also appended to the segment cache, if one is given for the partition, before the filter
+ * runs, so the cache can serve later playbacks with other filters. Rejected records are neither decoded nor buffered;
+ * they only move the partition's watermark, so a partition the filter empties does not hold back the merge.
+ * A partition is done once its consumer position passes the end of its window, so reading up to the high-water mark
+ * ends without waiting for an empty poll.
+ * Polls never wait for records: the fetcher runs in steps on the shared fetch scheduler and backs off while idle.
+ */
+@Slf4j
+class PartitionFetcher<T> extends CooperativeTask {
+
+    private static final long IDLE_DELAY_MS = 10L;
+    private static final long FULL_DELAY_MS = 1L;
+    private static final long IDLE_LIMIT_MS = 1000L;
+
+    private final Consumer<byte[], byte[]> consumer;
+    private final Map<TopicPartition, MessageBuffer<T>> buffers;
+    private final Map<TopicPartition, PartitionWindow> windows;
+    private final Map<TopicPartition, SegmentWriter> segmentWriters;
+    private final MessageFilter filter;
+    private final Function<KafkaMessage<byte[]>, KafkaMessage<T>> converter;
+    private volatile boolean closed;
+    private boolean assigned;
+    private long idleSince;
+
+    PartitionFetcher(Consumer<byte[], byte[]> consumer,
+                     Map<TopicPartition, MessageBuffer<T>> buffers,
+                     Map<TopicPartition, PartitionWindow> windows,
+                     Map<TopicPartition, SegmentWriter> segmentWriters,
+                     MessageFilter filter,
+                     Function<KafkaMessage<byte[]>, KafkaMessage<T>> converter) {
+        this.consumer = consumer;
+        this.buffers = buffers;
+        this.windows = windows;
+        this.segmentWriters = segmentWriters;
+        this.filter = filter;
+        this.converter = converter;
+    }
+
+    @Override
+    protected long step() {
+        try {
+            if (!assigned) {
+                consumer.assign(buffers.keySet());
+                windows.forEach((tp, window) -> consumer.seek(tp, window.getStartOffset()));
+                assigned = true;
+            }
+            if (closed || !hasActivePartitions()) return finish();
+            applyBackpressure();
+            if (consumer.paused().size() == buffers.size()) return FULL_DELAY_MS;
+            var records = consumer.poll(Duration.ZERO);
+            if (records.isEmpty()) {
+                long now = System.currentTimeMillis();
+                if (idleSince == 0 || !consumer.paused().isEmpty()) idleSince = now;
+                else if (now - idleSince >= IDLE_LIMIT_MS) return finish();
+                return IDLE_DELAY_MS;
+            }
+            idleSince = 0;
+            for (TopicPartition tp : records.partitions()) {
+                var buffer = buffers.get(tp);
+                var segmentWriter = segmentWriters.get(tp);
+                var window = windows.get(tp);
+                for (var record : records.records(tp)) {
+                    if (buffer.isFinished()) break;
+                    if (record.offset() > window.getEndOffset()) {
+                        buffer.finish();
+                        break;
+                    }
+                    var message = toMessage(record);
+                    if (segmentWriter != null) segmentWriter.append(record.offset(), message);
+                    if (window.admit(record.offset(), record.timestamp()) && filter.accept(message)) {
+                        buffer.add(converter.apply(message), message.rawSize());
+                    } else {
+                        buffer.advanceWatermark(record.timestamp());
+                    }
+                    if (window.isComplete(record.offset())) buffer.finish();
+                }
+            }
+            finishReadPartitions();
+            consumer.commitAsync();
+            return 0;
+        } catch (WakeupException e) {
+            log.debug("Fetch for {} was woken up", buffers.keySet());
+            return finish();
+        } catch (Exception e) {
+            log.warn("Fetch failed for {}", buffers.keySet(), e);
+            return finish();
+        }
+    }
+
+    @Override
+    protected void abort() {
+        finish();
+    }
+
+    private long finish() {
+        buffers.values().forEach(MessageBuffer::finish);
+        segmentWriters.values().forEach(SegmentWriter::close);
+        consumer.close();
+        return DONE;
+    }
+
+    private static KafkaMessage<byte[]> toMessage(ConsumerRecord<byte[], byte[]> record) {
+        return new KafkaMessage<>(record.timestamp(), record.value(), record.key(), record.headers(), record.topic(),
+                record.partition(), record.offset());
+    }
+
+    /**
+     * Finishes partitions whose window ends on offsets that are never returned, such as transaction markers or
+     * records removed by compaction.
+     */
+    private void finishReadPartitions() {
+        buffers.forEach((tp, buffer) -> {
+            if (!buffer.isFinished() && consumer.position(tp) > windows.get(tp).getEndOffset()) buffer.finish();
+        });
+    }
+
+    private boolean hasActivePartitions() {
+        return buffers.values().stream().anyMatch(buffer -> !buffer.isFinished());
+    }
+
+    private void applyBackpressure() {
+        var pause = new ArrayList<TopicPartition>();
+        var resume = new ArrayList<TopicPartition>();
+        buffers.forEach((tp, buffer) -> {
+            if (buffer.isFinished() || buffer.isFull()) pause.add(tp);
+            else resume.add(tp);
+        });
+        consumer.pause(pause);
+        consumer.resume(resume);
+    }
+
+    void close() {
+        closed = true;
+        consumer.wakeup();
+    }
+}
@@ -0,0 +1,31 @@
+package com.cyurtoz.kafka;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The part of a playback's partitions one instance plays when several share it: every {@code count}-th partition
+ * in topic and partition order, starting with the {@code index}-th.
+ */
+@Getter
+@AllArgsConstructor
+public class PartitionShare {
+
+    public static final PartitionShare ALL = new PartitionShare(0, 1);
+
+    private final int index;
+    private final int count;
+
+    /**
+     * @param ordered all partitions, in the same order on every instance
+     */
+    <T> List<T> of(List<T> ordered) {
+        if (count == 1) return ordered;
+        var share = new ArrayList<T>();
+        for (int i = index; i < ordered.size(); i += count) share.add(ordered.get(i));
+        return share;
+    }
+}
@@ -0,0 +1,72 @@
+package com.cyurtoz.kafka;
+
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * The part of one partition a reader goes through, given as an offset range that may be a little wider than the
+ * time window. Records before the first one at or after {@code startTimestamp} are skipped, and the first one at or
+ * after {@code endTimestamp} is the last one read, which is how {@code offsetsForTimes} bounds a window.
+ * Only used by the single thread reading the partition.
+ */
+class PartitionWindow {
+
+    static final long NO_START_TIMESTAMP = Long.MIN_VALUE;
+
+    private final TopicPartition topicPartition;
+    private final long startOffset;
+    private final long endOffset;
+    private final long startTimestamp;
+    private final long endTimestamp;
+    private final TimestampIndex index;
+    private boolean started;
+    private boolean ended;
+    private long maxTimestamp = Long.MIN_VALUE;
+    private int sinceIndexed;
+
+    /**
+     * @param startTimestamp {@link #NO_START_TIMESTAMP} if every record from {@code startOffset} on is in the window
+     * @param index          index to add the timestamps read to, or null if the records before {@code startOffset}
+     *                       are not known to be older than {@code startTimestamp}
+     */
+    PartitionWindow(TopicPartition topicPartition, long startOffset, long endOffset, long startTimestamp,
+                    long endTimestamp, TimestampIndex index) {
+        this.topicPartition = topicPartition;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+        this.startTimestamp = startTimestamp;
+        this.endTimestamp = endTimestamp;
+        this.index = startTimestamp == NO_START_TIMESTAMP ? null : index;
+        this.started = startTimestamp == NO_START_TIMESTAMP;
+    }
+
+    long getStartOffset() {
+        return startOffset;
+    }
+
+    long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * Called for every record of the partition from {@code startOffset} on, in offset order.
+     *
+     * @return whether the record is in the window
+     */
+    boolean admit(long offset, long timestamp) {
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+        if (!started && timestamp >= startTimestamp) started = true;
+        if (started && timestamp >= endTimestamp) ended = true;
+        if (index != null && started && (++sinceIndexed >= index.getInterval() || ended || offset >= endOffset)) {
+            index.record(topicPartition, offset, maxTimestamp);
+            sinceIndexed = 0;
+        }
+        return started;
+    }
+
+    /**
+     * @return whether nothing after {@code offset} is in the window
+     */
+    boolean isComplete(long offset) {
+        return ended || offset >= endOffset;
+    }
+}
@@ -0,0 +1,154 @@
+package com.cyurtoz.kafka;
+
+import com.cyurtoz.model.KafkaMessage;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Sends the messages of one playback asynchronously through a shared producer.
+ * At most {@code maxInFlightSends} sends are unacknowledged at a time; further sends are refused until the broker
+ * catches up, so the dispatching thread never blocks. Failures are counted and only sampled into the log.
+ * Besides the playback's totals, every send is measured on the meters of the topic it goes to.
+ */
+@Slf4j
+public class PlaybackSender implements AutoCloseable {
+
+    private static final long FAILURE_LOG_INTERVAL = 1000L;
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+    private final Producer<byte[], byte[]> producer;
+    private final ObjectMapper mapper;
+    private final int maxInFlightSends;
+    private final Semaphore inFlight;
+    private final Function<String, TopicMeters> metersFactory;
+    private final Map<String, TopicMeters> meters;
+    private final Runnable onClose;
+    private final AtomicLong sent;
+    private final AtomicLong sentBytes;
+    private final AtomicLong failed;
+
+    /**
+     * @param metersFactory creates the meters of a target topic, called once per topic on its first send
+     */
+    PlaybackSender(Producer<byte[], byte[]> producer, ObjectMapper mapper, int maxInFlightSends,
+                   Function<String, TopicMeters> metersFactory, Runnable onClose) {
+        this.producer = producer;
+        this.mapper = mapper;
+        this.maxInFlightSends = maxInFlightSends;
+        this.inFlight = new Semaphore(maxInFlightSends);
+        this.metersFactory = metersFactory;
+        this.meters = new ConcurrentHashMap<>();
+        this.onClose = onClose;
+        this.sent = new AtomicLong();
+        this.sentBytes = new AtomicLong();
+        this.failed = new AtomicLong();
+    }
+
+    /**
+     * Sends a message with its original key and headers.
+     * Raw {@code byte[]} payloads are forwarded unchanged, anything else is encoded as JSON.
+     *
+     * @param preservePartition send to the partition the message was read from instead of letting the producer choose
+     * @return false, without sending, if {@code maxInFlightSends} sends are still unacknowledged
+     */
+    public boolean send(String topic, KafkaMessage<?> message, boolean preservePartition) {
+        if (!inFlight.tryAcquire()) return false;
+        var topicMeters = meters.computeIfAbsent(topic, metersFactory);
+        try {
+            Integer partition = preservePartition ? message.getPartition() : null;
+            var value = encode(message.getPayload());
+            var record = new ProducerRecord<>(topic, partition, null, message.getKey(), value, message.getHeaders());
+            long size = (record.key() == null ? 0 : record.key().length) + (value == null ? 0 : value.length);
+            long sentAt = System.nanoTime();
+            producer.send(record, (metadata, exception) -> {
+                inFlight.release();
+                topicMeters.getSendLatency().record(System.nanoTime() - sentAt, TimeUnit.NANOSECONDS);
+                if (exception == null) {
+                    sent.incrementAndGet();
+                    sentBytes.addAndGet(size);
+                    topicMeters.getSent().increment();
+                    topicMeters.getSentBytes().increment(size);
+                } else {
+                    recordFailure(topicMeters, topic, exception);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            recordFailure(topicMeters, topic, e);
+        }
+        return true;
+    }
+
+    private byte[] encode(Object payload) {
+        if (payload == null || payload instanceof byte[]) return (byte[]) payload;
+        try {
+            return mapper.writeValueAsBytes(payload);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Message could not be serialized", e);
+        }
+    }
+
+    private void recordFailure(TopicMeters topicMeters, String topic, Exception exception) {
+        topicMeters.getErrors().increment();
+        long failures = failed.incrementAndGet();
+        if (failures == 1 || failures % FAILURE_LOG_INTERVAL == 0) {
+            log.warn("{} sends to {} failed so far", failures, topic, exception);
+        }
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getSentBytes() {
+        return sentBytes.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Waits until this sender's own sends are acknowledged, without flushing the producer other playbacks share,
+     * and releases the producer. Blocks, so it is not called on a dispatch thread.
+     */
+    @Override
+    public void close() {
+        try {
+            if (inFlight.tryAcquire(maxInFlightSends, CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                inFlight.release(maxInFlightSends);
+            } else {
+                log.warn("Closing with {} sends unacknowledged", maxInFlightSends - inFlight.availablePermits());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        onClose.run();
+    }
+
+    /**
+     * Meters of the sends of one playback to one target topic.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class TopicMeters {
+        private final Timer sendLatency;
+        private final Counter sent;
+        private final Counter sentBytes;
+        private final Counter errors;
+    }
+}
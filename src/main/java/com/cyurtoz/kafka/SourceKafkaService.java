@@ -1,139 +1,275 @@
 package com.cyurtoz.kafka;
 
+import com.cyurtoz.cache.SegmentCache;
+import com.cyurtoz.cache.SegmentWriter;
+import com.cyurtoz.filter.MessageFilter;
 import com.cyurtoz.model.KafkaMessage;
+import com.cyurtoz.util.DaemonThreads;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
-import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
-import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
-import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
-import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 @Slf4j
-public class SourceKafkaService {
+public class SourceKafkaService implements MessageSource {
+
+    private static final Duration DRAIN_WAIT = Duration.ofSeconds(1);
+    private static final int PREFETCH_CHUNK_BYTES = 64 * 1024 * 1024;
 
     private final String sourceKafkaHost;
+    private final int readAhead;
+    private final int fetchConsumers;
     private final ObjectMapper mapper;
-    private static final long INFINITE_OFFSET = -1L;
+    private final ScheduledExecutorService fetchScheduler;
+    private final SegmentCache segmentCache;
+    private final AtomicLong prefetchBudget;
+    private final Path prefetchSpillDirectory;
+    private final TimestampIndex timestampIndex;
 
-    public SourceKafkaService(@Value("${kafka-playback-service.source.bootstrap-servers}") String sourceKafkaHost) {
+    public SourceKafkaService(@Value("${kafka-playback-service.source.bootstrap-servers}") String sourceKafkaHost,
+                              @Value("${kafka-playback-service.source.read-ahead:10000}") int readAhead,
+                              @Value("${kafka-playback-service.source.fetch-consumers:4}") int fetchConsumers,
+                              @Value("${kafka-playback-service.source.fetch-threads:0}") int fetchThreads,
+                              @Value("${kafka-playback-service.source.index-interval:1000}") int indexInterval,
+                              @Value("${kafka-playback-service.source.index-refresh-ms:5000}") long indexRefreshMs,
+                              @Value("${kafka-playback-service.prefetch.max-memory-bytes:1073741824}") long prefetchMaxMemory,
+                              @Value("${kafka-playback-service.prefetch.spill-directory:${java.io.tmpdir}}") String prefetchSpillDirectory,
+                              SegmentCache segmentCache) {
         this.sourceKafkaHost = sourceKafkaHost;
+        this.readAhead = readAhead;
+        this.fetchConsumers = Math.max(fetchConsumers, 1);
         this.mapper = new ObjectMapper();
+        this.fetchScheduler = Executors.newScheduledThreadPool(
+                fetchThreads > 0 ? fetchThreads : Runtime.getRuntime().availableProcessors(), DaemonThreads.numbered("playback-fetch-"));
+        this.segmentCache = segmentCache;
+        this.prefetchBudget = new AtomicLong(Math.min(prefetchMaxMemory, OffHeapMessageStream.maxDirectMemory() / 2));
+        if (prefetchBudget.get() < prefetchMaxMemory) {
+            log.info("Prefetch memory capped at {} bytes, half the direct memory limit", prefetchBudget.get());
+        }
+        this.prefetchSpillDirectory = Paths.get(prefetchSpillDirectory);
+        this.timestampIndex = new TimestampIndex(this::createConsumer, indexRefreshMs, indexInterval);
+    }
+
+    public List<KafkaMessage<byte[]>> findRawMessagesBetween(String sourceTopic, Date startDate, Date endDate) {
+        return findRawMessagesBetween(List.of(sourceTopic), startDate, endDate, MessageFilter.ACCEPT_ALL);
+    }
+
+    public List<KafkaMessage<byte[]>> findRawMessagesBetween(Collection<String> sourceTopics, Date startDate, Date endDate,
+                                                             MessageFilter filter) {
+        var messages = new ArrayList<KafkaMessage<byte[]>>();
+        drain(streamRawMessagesBetween(sourceTopics, startDate, endDate, filter), messages::add);
+        log.info("Found {} messages in topics {}", messages.size(), sourceTopics);
+        return messages;
     }
 
     public <T> List<KafkaMessage<T>> findMessagesBetween(String sourceTopic, Date startDate, Date endDate, Class<T> type) {
-        var sourceKafkaConsumer = createConsumer();
-        final List<KafkaMessage<T>> messages;
-        var startOffsets = findOffsets(sourceTopic, startDate.getTime(), sourceKafkaConsumer);
-        var endOffsets = findOffsets(sourceTopic, endDate.getTime(), sourceKafkaConsumer);
-        boolean isAssigned = assignStartingOffsets(sourceKafkaConsumer, startOffsets);
-        if (isAssigned) {
-            messages = pollMessagesUntilEndOffsets(sourceKafkaConsumer, endOffsets, type);
-            log.info("Found {} messages in topic {}", messages.size(), sourceTopic);
-        } else {
-            log.info("Could not be assigned to the topic {}", sourceTopic);
-            messages = Collections.emptyList();
-        }
-        closeConsumer(sourceKafkaConsumer);
+        var messages = new ArrayList<KafkaMessage<T>>();
+        drain(streamMessagesBetween(sourceTopic, startDate, endDate, type), messages::add);
+        log.info("Found {} messages in topic {}", messages.size(), sourceTopic);
         return messages;
     }
 
-    private boolean assignStartingOffsets(KafkaConsumer<String, Object> sourceKafkaConsumer,
-                                          Map<TopicPartition, OffsetAndTimestamp> offsets) {
-        if (!offsets.isEmpty()) {
-            var nullOffsetsRemoved = offsets.entrySet().stream()
-                    .filter(e -> !Objects.isNull(e.getValue()))
-                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-            nullOffsetsRemoved.forEach((tp, offsetAndTimestamp) -> {
-                sourceKafkaConsumer.assign(Collections.singletonList(tp));
-                sourceKafkaConsumer.seek(tp, offsetAndTimestamp.offset());
-            });
-            return true;
-        } else return false;
+    /**
+     * Fetches the whole window before returning, like {@link #findRawMessagesBetween}, but keeps it outside the heap.
+     * Up to {@code prefetch.max-memory-bytes} of direct memory, but at most half the JVM's direct memory limit, is
+     * shared by all windows; beyond that they spill to memory-mapped files in {@code prefetch.spill-directory}.
+     *
+     * @param share       see {@link #streamRawMessagesFrom}
+     * @param nextOffsets see {@link #streamRawMessagesFrom}
+     */
+    public OffHeapMessageStream prefetchRawMessagesBetween(Collection<String> sourceTopics, PartitionShare share,
+                                                           Map<TopicPartition, Long> nextOffsets,
+                                                           Date startDate, Date endDate, MessageFilter filter) {
+        var window = new OffHeapMessageStream(prefetchBudget, PREFETCH_CHUNK_BYTES, prefetchSpillDirectory);
+        try {
+            drain(streamRawMessagesFrom(sourceTopics, share, nextOffsets, startDate, endDate, filter), window::add);
+        } catch (RuntimeException | Error e) {
+            window.close();
+            throw e;
+        }
+        log.info("Prefetched {} messages, {} bytes in topics {}", window.getFetchedMessages(), window.getFetchedBytes(),
+                sourceTopics);
+        return window;
     }
 
-    public <T> List<KafkaMessage<T>> pollMessagesUntilEndOffsets(KafkaConsumer<String, Object> consumer,
-                                                           Map<TopicPartition, OffsetAndTimestamp> endOffsets,
-                                                           Class<T> type) {
-        var messages = new ArrayList<KafkaMessage<T>>();
-        Map<String, Long> partitionsToEndOffsets = createEndOffsetMap(endOffsets);
-        while (!partitionsToEndOffsets.isEmpty()) {
-            final ConsumerRecords<String, Object> consumerRecords = consumer.poll(Duration.ofMillis(1000));
-            if (!consumerRecords.isEmpty()) {
-                consumerRecords.forEach(record -> {
-                    TopicPartition topicPartition = new TopicPartition(record.topic(), record.partition());
-                    String partitionId = topicPartition.toString();
-                    if (partitionsToEndOffsets.containsKey(partitionId)) {
-                        Long endOffset = partitionsToEndOffsets.get(partitionId);
-                        if (endOffset.equals(INFINITE_OFFSET) || partitionsToEndOffsets.get(partitionId) >= record.offset()) {
-                            T value = mapper.convertValue(record.value(), type);
-                            messages.add(new KafkaMessage<T>(record.timestamp(), value));
-                        } else {
-                            partitionsToEndOffsets.remove(partitionId);
-                        }
-                    }
-                });
-            } else {
-                break;
+    private <T> void drain(MessageStream<T> source, Consumer<KafkaMessage<T>> sink) {
+        try (var stream = source) {
+            while (stream.awaitNext(DRAIN_WAIT) || !stream.isFinished()) {
+                KafkaMessage<T> message;
+                while ((message = stream.poll()) != null) sink.accept(message);
             }
-            consumer.commitAsync();
         }
-        return messages;
     }
 
-    private Map<String, Long> createEndOffsetMap(Map<TopicPartition, OffsetAndTimestamp> endOffsets) {
-        var offsetMap = new HashMap<String, Long>();
-        endOffsets.forEach((key, value) -> {
-            String partitionId = key.toString();
-            if (!Objects.isNull(value)) {
-                offsetMap.put(partitionId, value.offset());
-            } else {
-                offsetMap.put(partitionId, INFINITE_OFFSET);
-            }
-        });
-        return offsetMap;
+    /**
+     * Starts fetching the window in the background and returns immediately.
+     * Partitions are split across up to {@code fetch-consumers} consumers and merged back into timestamp order.
+     * The consumers of all playbacks take turns on the {@code fetch-threads} threads of a shared scheduler.
+     * About {@code read-ahead} messages are held in memory; a partition is paused until its share is consumed.
+     * Key, value and headers are passed through as the original bytes.
+     */
+    public MessageStream<byte[]> streamRawMessagesBetween(String sourceTopic, Date startDate, Date endDate) {
+        return streamRawMessagesBetween(List.of(sourceTopic), startDate, endDate, MessageFilter.ACCEPT_ALL);
+    }
+
+    /**
+     * Same as {@link #streamRawMessagesBetween(String, Date, Date)} for several topics at once: the partitions of all
+     * topics share the consumers and the read-ahead, and are merged into a single timestamp order.
+     * Each message carries the topic it was read from. Records rejected by {@code filter} are dropped on the fetch
+     * threads before they are buffered.
+     */
+    @Override
+    public MessageStream<byte[]> streamRawMessagesBetween(Collection<String> sourceTopics, Date startDate, Date endDate,
+                                                          MessageFilter filter) {
+        return streamRawMessagesFrom(sourceTopics, PartitionShare.ALL, Map.of(), startDate, endDate, filter);
     }
 
-    private void closeConsumer(KafkaConsumer<String, Object> consumer) {
-        log.info("Closing consumer - topics: {} - metadata: {}",
-                String.join(",", consumer.assignment().stream()
-                        .map(TopicPartition::topic)
-                        .collect(Collectors.toSet())),
-                consumer.groupMetadata());
-        consumer.close();
+    /**
+     * Same as {@link #streamRawMessagesBetween(Collection, Date, Date, MessageFilter)}, for a share of the partitions
+     * and continuing an earlier read.
+     *
+     * @param share       partitions this instance plays when several instances share the playback
+     * @param nextOffsets offsets to start the given partitions at instead of the first offset at {@code startDate};
+     *                    partitions already read past the end of the window are left out
+     */
+    public MessageStream<byte[]> streamRawMessagesFrom(Collection<String> sourceTopics, PartitionShare share,
+                                                       Map<TopicPartition, Long> nextOffsets,
+                                                       Date startDate, Date endDate, MessageFilter filter) {
+        return startFetch(sourceTopics, share, nextOffsets, startDate, endDate, filter, message -> message);
     }
 
-    private KafkaConsumer<String, Object> createConsumer() {
+    /**
+     * Same as {@link #streamRawMessagesBetween(String, Date, Date)} but decodes each JSON value into {@code type}
+     * on the fetch threads.
+     */
+    public <T> MessageStream<T> streamMessagesBetween(String sourceTopic, Date startDate, Date endDate, Class<T> type) {
+        return startFetch(List.of(sourceTopic), PartitionShare.ALL, Map.of(), startDate, endDate,
+                MessageFilter.ACCEPT_ALL, message -> message.withPayload(decode(message.getPayload(), type)));
+    }
+
+    private <T> T decode(byte[] value, Class<T> type) {
+        try {
+            return value == null ? null : mapper.readValue(value, type);
+        } catch (IOException e) {
+            throw new RuntimeException("Message could not be deserialized to " + type.getSimpleName(), e);
+        }
+    }
+
+    private <T> MessageStream<T> startFetch(Collection<String> sourceTopics, PartitionShare share,
+                                            Map<TopicPartition, Long> nextOffsets,
+                                            Date startDate, Date endDate,
+                                            MessageFilter filter,
+                                            Function<KafkaMessage<byte[]>, KafkaMessage<T>> converter) {
+        long startTimestamp = startDate.getTime();
+        long endTimestamp = endDate.getTime();
+        var ranges = timestampIndex.resolve(sourceTopics, startTimestamp, endTimestamp);
+        // The share is taken of all partitions, not only of those with records in the window, so instances that
+        // resolve the window a little differently still split the partitions the same way.
+        var shared = new HashSet<>(share.of(timestampIndex.partitionsOf(sourceTopics)));
+        var partitions = ranges.keySet().stream()
+                .filter(shared::contains)
+                .sorted(Comparator.comparing(TopicPartition::topic).thenComparingInt(TopicPartition::partition))
+                .collect(Collectors.toList());
+        if (partitions.isEmpty()) {
+            log.info("Could not be assigned to the topics {}", sourceTopics);
+            return new MergingMessageStream<>(Collections.emptyList(), () -> { });
+        }
+
+        int capacity = Math.max(readAhead / partitions.size(), 1);
+        var lanes = new ArrayList<MessageBuffer<T>>();
+        var readers = new ArrayList<CachedPartitionReader<T>>();
+        var fetchWindows = new LinkedHashMap<TopicPartition, PartitionWindow>();
+        for (TopicPartition tp : partitions) {
+            boolean resumed = nextOffsets.containsKey(tp);
+            var range = resumed ? ranges.get(tp).continueAt(nextOffsets.get(tp)) : ranges.get(tp);
+            if (range.isEmpty()) continue;
+            long startOffset = range.getStartOffset();
+            long windowStart = resumed ? PartitionWindow.NO_START_TIMESTAMP : startTimestamp;
+            var cached = segmentCache.findChain(tp, startOffset, range.getEndOffset());
+            if (!cached.isEmpty()) {
+                // Where the cache stops short of the window's end, the reader stops before the end can be reached,
+                // so the fetch that takes over neither skips nor ends too early.
+                long cachedUntil = cached.get(cached.size() - 1).getLastOffset();
+                long readUntil = cachedUntil >= range.getEndOffset() ? range.getEndOffset()
+                        : Math.min(cachedUntil, range.getEndNotBefore() - 1);
+                if (readUntil >= range.getStartReachedBy()) {
+                    var lane = new MessageBuffer<T>(capacity);
+                    lanes.add(lane);
+                    var window = new PartitionWindow(tp, startOffset, readUntil, windowStart, endTimestamp, timestampIndex);
+                    readers.add(new CachedPartitionReader<>(cached, window, lane, filter, converter,
+                            () -> segmentCache.release(cached)));
+                    if (readUntil >= range.getEndOffset()) continue;
+                    startOffset = readUntil + 1;
+                    windowStart = PartitionWindow.NO_START_TIMESTAMP;
+                } else {
+                    segmentCache.release(cached);
+                }
+            }
+            fetchWindows.put(tp, new PartitionWindow(tp, startOffset, range.getEndOffset(), windowStart, endTimestamp,
+                    timestampIndex));
+        }
+
+        var fetchPartitions = new ArrayList<>(fetchWindows.keySet());
+        var fetchers = new ArrayList<PartitionFetcher<T>>();
+        int consumerCount = Math.min(fetchConsumers, fetchPartitions.size());
+        for (int i = 0; i < consumerCount; i++) {
+            var assigned = new LinkedHashMap<TopicPartition, MessageBuffer<T>>();
+            var assignedWindows = new HashMap<TopicPartition, PartitionWindow>();
+            var segmentWriters = new HashMap<TopicPartition, SegmentWriter>();
+            for (int p = i; p < fetchPartitions.size(); p += consumerCount) {
+                var tp = fetchPartitions.get(p);
+                var lane = new MessageBuffer<T>(capacity);
+                lanes.add(lane);
+                assigned.put(tp, lane);
+                assignedWindows.put(tp, fetchWindows.get(tp));
+                var segmentWriter = segmentCache.openWriter(tp, fetchWindows.get(tp).getStartOffset());
+                if (segmentWriter != null) segmentWriters.put(tp, segmentWriter);
+            }
+            fetchers.add(new PartitionFetcher<>(createConsumer(), assigned, assignedWindows, segmentWriters, filter,
+                    converter));
+        }
+        log.info("Reading {} partitions of topics {} - {} from cache, {} from Kafka with {} consumers",
+                partitions.size(), sourceTopics, readers.size(), fetchPartitions.size(), consumerCount);
+        readers.forEach(reader -> reader.start(fetchScheduler));
+        fetchers.forEach(fetcher -> fetcher.start(fetchScheduler));
+        return new MergingMessageStream<>(lanes, () -> {
+            readers.forEach(CachedPartitionReader::close);
+            fetchers.forEach(PartitionFetcher::close);
+        });
+    }
+
+    private KafkaConsumer<byte[], byte[]> createConsumer() {
         final Properties props = new Properties();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, sourceKafkaHost);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, "playbackService");
-        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class.getName());
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
-        props.put(JsonDeserializer.VALUE_DEFAULT_TYPE, Object.class);
-        props.put(JsonDeserializer.USE_TYPE_INFO_HEADERS, false);
         props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, "1000");
         return new KafkaConsumer<>(props);
     }
 
-    public Map<TopicPartition, OffsetAndTimestamp> findOffsets(String topicName, long timestampMs,
-                                                               KafkaConsumer<String, Object> sourceKafkaConsumer) {
-        List<PartitionInfo> partitionInfos = sourceKafkaConsumer.partitionsFor(topicName);
-        List<TopicPartition> topicPartitionList = partitionInfos.stream()
-                .map(info -> new TopicPartition(topicName, info.partition()))
-                .collect(Collectors.toList());
-        Map<TopicPartition, Long> partitionTimestampMap = topicPartitionList.stream()
-                .collect(Collectors.toMap(tp -> tp, tp -> timestampMs));
-        return sourceKafkaConsumer.offsetsForTimes(partitionTimestampMap);
+    @PreDestroy
+    public void close() {
+        fetchScheduler.shutdownNow();
+        timestampIndex.close();
     }
 }
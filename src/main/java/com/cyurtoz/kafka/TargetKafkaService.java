@@ -1,56 +1,80 @@
 package com.cyurtoz.kafka;
 
+import com.cyurtoz.model.ProducerSettings;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
-import org.apache.kafka.clients.producer.ProducerRecord;
-import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.core.DefaultKafkaProducerFactory;
-import org.springframework.kafka.support.serializer.JsonSerializer;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 @Service
 @Slf4j
 public class TargetKafkaService {
 
     private final String targetKafkaHost;
-    private final DefaultKafkaProducerFactory<String, Object> factory;
-    private final ConcurrentHashMap<String, Producer<String, Object>> topicToProducerMap;
+    private final ObjectMapper mapper;
+    private final Map<ProducerSettings, SharedProducer> producers;
 
     public TargetKafkaService(@Value("${kafka-playback-service.target.bootstrap-servers}") String targetKafkaHost) {
         this.targetKafkaHost = targetKafkaHost;
-        this.factory = createProducerFactory();
-        this.topicToProducerMap = new ConcurrentHashMap<>();
+        this.mapper = new ObjectMapper();
+        this.producers = new HashMap<>();
     }
 
-    public void send(String topic, Object message) {
-        Producer<String, Object> producer = topicToProducerMap.getOrDefault(topic, createAndSaveProducer(topic));
-        producer.send(new ProducerRecord<>(topic, message));
-        log.info("DEST {} - {}", topic, message);
+    /**
+     * Opens a sender for one playback. Playbacks with equal settings share a producer, which is closed
+     * when the last of their senders is closed.
+     */
+    public synchronized PlaybackSender openSender(ProducerSettings settings,
+                                                  Function<String, PlaybackSender.TopicMeters> metersFactory) {
+        var shared = producers.computeIfAbsent(settings, s -> new SharedProducer(createProducer(s)));
+        shared.users++;
+        return new PlaybackSender(shared.producer, mapper, settings.getMaxInFlightSends(), metersFactory,
+                () -> release(settings));
     }
 
-    private Producer<String, Object> createAndSaveProducer(String topic) {
-        if (topicToProducerMap.containsKey(topic)) return topicToProducerMap.get(topic);
-        else return factory.createProducer();
+    private synchronized void release(ProducerSettings settings) {
+        var shared = producers.get(settings);
+        if (shared != null && --shared.users == 0) {
+            producers.remove(settings);
+            shared.producer.close();
+        }
     }
 
-    public void stopForTopic(String topic) {
-        if (topicToProducerMap.containsKey(topic)) {
-            topicToProducerMap.get(topic).close();
-            topicToProducerMap.remove(topic);
-        }
+    @PreDestroy
+    public synchronized void closeAll() {
+        producers.values().forEach(shared -> shared.producer.close());
+        producers.clear();
     }
 
-    private DefaultKafkaProducerFactory<String, Object> createProducerFactory() {
+    private Producer<byte[], byte[]> createProducer(ProducerSettings settings) {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, targetKafkaHost);
-        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
-        return new DefaultKafkaProducerFactory<>(configProps);
+        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        configProps.put(ProducerConfig.LINGER_MS_CONFIG, settings.getLingerMs());
+        configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, settings.getBatchSize());
+        configProps.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, settings.getCompressionType());
+        configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, settings.isIdempotence());
+        configProps.put(ProducerConfig.ACKS_CONFIG, settings.isIdempotence() ? "all" : settings.getAcks());
+        log.info("Creating producer for {} with {}", targetKafkaHost, settings);
+        return new KafkaProducer<>(configProps);
+    }
+
+    private static final class SharedProducer {
+        private final Producer<byte[], byte[]> producer;
+        private int users;
+
+        private SharedProducer(Producer<byte[], byte[]> producer) {
+            this.producer = producer;
+        }
     }
 }
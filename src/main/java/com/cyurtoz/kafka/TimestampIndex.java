@@ -0,0 +1,246 @@
+package com.cyurtoz.kafka;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Sparse timestamp to offset index of the source partitions, so the bounds of a window usually resolve locally
+ * instead of with an {@code offsetsForTimes} round-trip per bound and playback.
+ * <p>
+ * Each point of a partition says that {@code maxTimestamp} is the highest timestamp of the records up to
+ * {@code offset}. The first record at or after a timestamp then lies between the points just below and just above
+ * it, and a window is read from the lower one with the exact bound found from the record timestamps.
+ * Points come from the answers of the broker and from the fetches, which add one every {@code interval} records.
+ * Partitions, log start and high-water marks are cached and refreshed every {@code refreshIntervalMs}; a window
+ * running past the indexed records asks for the current high-water mark so the fetch stops right there.
+ * <p>
+ * Lookups share one consumer and run one at a time, while each partition index locks only itself, so fetches
+ * recording points never wait for a lookup talking to the broker.
+ */
+@Slf4j
+class TimestampIndex {
+
+    private static final int MAX_POINTS = 100_000;
+
+    private final Supplier<Consumer<byte[], byte[]>> consumerFactory;
+    private final long refreshIntervalMs;
+    private final int interval;
+    private final long maxScan;
+    private final Map<String, List<TopicPartition>> partitionsByTopic;
+    private final Map<String, Long> refreshedAt;
+    private final Map<TopicPartition, PartitionIndex> partitions;
+    private Consumer<byte[], byte[]> consumer;
+
+    TimestampIndex(Supplier<Consumer<byte[], byte[]>> consumerFactory, long refreshIntervalMs, int interval) {
+        this.consumerFactory = consumerFactory;
+        this.refreshIntervalMs = refreshIntervalMs;
+        this.interval = Math.max(interval, 1);
+        this.maxScan = 2L * this.interval;
+        this.partitionsByTopic = new HashMap<>();
+        this.refreshedAt = new HashMap<>();
+        this.partitions = new ConcurrentHashMap<>();
+    }
+
+    int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Adds a point learned while reading the partition.
+     *
+     * @param maxTimestamp highest timestamp of all records up to and including {@code offset}
+     */
+    void record(TopicPartition topicPartition, long offset, long maxTimestamp) {
+        partitions.computeIfAbsent(topicPartition, key -> new PartitionIndex()).add(offset, maxTimestamp);
+    }
+
+    /**
+     * @return all partitions of {@code topics}, in topic and partition order
+     */
+    synchronized List<TopicPartition> partitionsOf(Collection<String> topics) {
+        refresh(topics);
+        return topics.stream()
+                .flatMap(topic -> partitionsByTopic.getOrDefault(topic, List.of()).stream())
+                .sorted(Comparator.comparing(TopicPartition::topic).thenComparingInt(TopicPartition::partition))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the offsets holding the window in each partition of {@code topics}, leaving out partitions without
+     * records in it
+     */
+    synchronized Map<TopicPartition, OffsetRange> resolve(Collection<String> topics, long startTimestamp, long endTimestamp) {
+        refresh(topics);
+        var candidates = topics.stream()
+                .flatMap(topic -> partitionsByTopic.getOrDefault(topic, List.of()).stream())
+                .filter(tp -> !partitions.get(tp).isEmpty())
+                .collect(Collectors.toList());
+        var beyondIndex = candidates.stream()
+                .filter(tp -> partitions.get(tp).upperBound(startTimestamp) == null
+                        || partitions.get(tp).upperBound(endTimestamp) == null)
+                .collect(Collectors.toList());
+        if (!beyondIndex.isEmpty()) {
+            consumer().endOffsets(beyondIndex).forEach((tp, offset) -> partitions.get(tp).setHighWatermark(offset));
+        }
+
+        var starts = new HashMap<TopicPartition, long[]>();
+        var ends = new HashMap<TopicPartition, long[]>();
+        var startQueries = new HashMap<TopicPartition, Long>();
+        var endQueries = new HashMap<TopicPartition, Long>();
+        for (TopicPartition tp : candidates) {
+            var index = partitions.get(tp);
+            var start = index.bounds(startTimestamp, maxScan);
+            if (start != null) starts.put(tp, start);
+            else startQueries.put(tp, startTimestamp);
+            var end = index.bounds(endTimestamp, maxScan);
+            if (end != null) ends.put(tp, end);
+            else endQueries.put(tp, endTimestamp);
+        }
+        query(startQueries, starts);
+        query(endQueries, ends);
+        log.debug("Resolved {} of {} window bounds of topics {} locally", 2 * candidates.size() - startQueries.size()
+                - endQueries.size(), 2 * candidates.size(), topics);
+
+        var ranges = new HashMap<TopicPartition, OffsetRange>();
+        for (TopicPartition tp : candidates) {
+            var start = starts.get(tp);
+            var end = ends.get(tp);
+            if (start[1] == PartitionIndex.NONE) continue;
+            ranges.put(tp, new OffsetRange(start[0], start[1], end[0],
+                    end[1] == PartitionIndex.NONE ? partitions.get(tp).getHighWatermark() - 1 : end[1]));
+        }
+        return ranges;
+    }
+
+    private void query(Map<TopicPartition, Long> timestamps, Map<TopicPartition, long[]> bounds) {
+        if (timestamps.isEmpty()) return;
+        Map<TopicPartition, OffsetAndTimestamp> answers = consumer().offsetsForTimes(timestamps);
+        timestamps.forEach((tp, timestamp) -> {
+            var index = partitions.get(tp);
+            var answer = answers.get(tp);
+            if (answer == null) {
+                bounds.put(tp, new long[]{index.lowerBound(timestamp), PartitionIndex.NONE});
+            } else {
+                index.add(answer.offset(), answer.timestamp());
+                bounds.put(tp, new long[]{answer.offset(), answer.offset()});
+            }
+        });
+    }
+
+    private void refresh(Collection<String> topics) {
+        long now = System.currentTimeMillis();
+        var stale = topics.stream()
+                .filter(topic -> now - refreshedAt.getOrDefault(topic, Long.MIN_VALUE / 2) >= refreshIntervalMs)
+                .collect(Collectors.toList());
+        if (stale.isEmpty()) return;
+        var refreshed = new ArrayList<TopicPartition>();
+        for (String topic : stale) {
+            List<PartitionInfo> infos = consumer().partitionsFor(topic);
+            var topicPartitions = infos == null ? List.<TopicPartition>of() : infos.stream()
+                    .map(info -> new TopicPartition(topic, info.partition()))
+                    .collect(Collectors.toList());
+            partitionsByTopic.put(topic, topicPartitions);
+            refreshedAt.put(topic, now);
+            refreshed.addAll(topicPartitions);
+        }
+        if (refreshed.isEmpty()) return;
+        var logStarts = consumer().beginningOffsets(refreshed);
+        var highWatermarks = consumer().endOffsets(refreshed);
+        refreshed.forEach(tp -> partitions.computeIfAbsent(tp, key -> new PartitionIndex())
+                .update(logStarts.getOrDefault(tp, 0L), highWatermarks.getOrDefault(tp, 0L)));
+    }
+
+    private Consumer<byte[], byte[]> consumer() {
+        if (consumer == null) consumer = consumerFactory.get();
+        return consumer;
+    }
+
+    synchronized void close() {
+        if (consumer != null) consumer.close();
+        consumer = null;
+    }
+
+    private static class PartitionIndex {
+
+        static final long NONE = -1L;
+
+        private final TreeMap<Long, Long> offsetsByMaxTimestamp = new TreeMap<>();
+        private long logStartOffset;
+        private long highWatermark;
+
+        synchronized void add(long offset, long maxTimestamp) {
+            if (offset < logStartOffset) return;
+            offsetsByMaxTimestamp.merge(maxTimestamp, offset, Math::min);
+            if (offsetsByMaxTimestamp.size() > MAX_POINTS) offsetsByMaxTimestamp.pollFirstEntry();
+        }
+
+        /**
+         * Points are only valid while all the records they cover exist, so they are dropped once retention removes
+         * the first of them.
+         */
+        synchronized void update(long logStartOffset, long highWatermark) {
+            if (!offsetsByMaxTimestamp.isEmpty() && offsetsByMaxTimestamp.firstEntry().getValue() < logStartOffset) {
+                offsetsByMaxTimestamp.clear();
+            }
+            this.logStartOffset = logStartOffset;
+            this.highWatermark = highWatermark;
+        }
+
+        synchronized void setHighWatermark(long highWatermark) {
+            this.highWatermark = Math.max(this.highWatermark, highWatermark);
+        }
+
+        synchronized long getHighWatermark() {
+            return highWatermark;
+        }
+
+        synchronized boolean isEmpty() {
+            return highWatermark <= logStartOffset;
+        }
+
+        /**
+         * @return the lowest offset the first record at or after {@code timestamp} can have
+         */
+        synchronized long lowerBound(long timestamp) {
+            var below = offsetsByMaxTimestamp.lowerEntry(timestamp);
+            return below == null ? logStartOffset : Math.max(below.getValue() + 1, logStartOffset);
+        }
+
+        /**
+         * @return the highest offset the first record at or after {@code timestamp} can have, or null if the index
+         * does not reach that far
+         */
+        synchronized Long upperBound(long timestamp) {
+            var above = offsetsByMaxTimestamp.ceilingEntry(timestamp);
+            return above == null ? null : above.getValue();
+        }
+
+        /**
+         * @return lowest and highest offset of the first record at or after {@code timestamp}, with {@link #NONE}
+         * as the highest if no record up to the high-water mark is, or null if the index cannot tell within
+         * {@code maxScan} records
+         */
+        synchronized long[] bounds(long timestamp, long maxScan) {
+            long lower = lowerBound(timestamp);
+            var upper = upperBound(timestamp);
+            if (upper != null) return upper - lower < maxScan ? new long[]{lower, upper} : null;
+            var last = offsetsByMaxTimestamp.lastEntry();
+            if (last != null && last.getValue() >= highWatermark - 1) return new long[]{lower, NONE};
+            return null;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.cyurtoz.metrics;
+
+import com.cyurtoz.kafka.MessageStream;
+import com.cyurtoz.kafka.PlaybackSender;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of one playback, tagged with its id. Send meters are also tagged with the target topic and registered
+ * when the playback first sends to it. They are all removed from the registry once the playback ends, so finished
+ * playbacks do not pile up as stale series.
+ */
+public class PlaybackMetrics implements AutoCloseable {
+
+    private final MeterRegistry registry;
+    private final Tags tags;
+    private final List<Meter> meters;
+    private final Timer scheduleLateness;
+    private final Timer scheduleEarliness;
+
+    PlaybackMetrics(MeterRegistry registry, String playbackId) {
+        this.registry = registry;
+        this.tags = Tags.of("playback", playbackId);
+        this.meters = new ArrayList<>();
+        this.scheduleLateness = register(Timer.builder("playback.schedule.lateness")
+                .description("Actual minus intended send time")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(registry));
+        this.scheduleEarliness = register(Timer.builder("playback.schedule.earliness")
+                .description("Intended minus actual send time of messages sent ahead in a batch")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    /**
+     * Registers the meters that read their values from the playback's source stream.
+     */
+    public void bind(MessageStream<?> stream) {
+        register(FunctionCounter.builder("playback.fetched.messages", stream, MessageStream::getFetchedMessages)
+                .tags(tags).register(registry));
+        register(FunctionCounter.builder("playback.fetched.bytes", stream, MessageStream::getFetchedBytes)
+                .tags(tags).baseUnit("bytes").register(registry));
+        register(Gauge.builder("playback.pending.messages", stream, MessageStream::getBuffered)
+                .description("Messages fetched but not yet dispatched")
+                .tags(tags).register(registry));
+    }
+
+    /**
+     * Registers the send meters of {@code topic}.
+     */
+    public PlaybackSender.TopicMeters topicMeters(String topic) {
+        var topicTags = tags.and("topic", topic);
+        return new PlaybackSender.TopicMeters(
+                register(Timer.builder("playback.send.latency")
+                        .description("Time from producer send to broker acknowledgement")
+                        .tags(topicTags)
+                        .publishPercentileHistogram()
+                        .register(registry)),
+                register(Counter.builder("playback.sent.messages").tags(topicTags).register(registry)),
+                register(Counter.builder("playback.sent.bytes").tags(topicTags).baseUnit("bytes").register(registry)),
+                register(Counter.builder("playback.send.errors").tags(topicTags).register(registry)));
+    }
+
+    /**
+     * @param errorNanos actual minus intended send time
+     */
+    public void recordTimingError(long errorNanos) {
+        if (errorNanos >= 0) scheduleLateness.record(errorNanos, TimeUnit.NANOSECONDS);
+        else scheduleEarliness.record(-errorNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private synchronized <M extends Meter> M register(M meter) {
+        meters.add(meter);
+        return meter;
+    }
+
+    @Override
+    public synchronized void close() {
+        meters.forEach(registry::remove);
+    }
+}
@@ -0,0 +1,18 @@
+package com.cyurtoz.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+@Component
+public class PlaybackMetricsFactory {
+
+    private final MeterRegistry registry;
+
+    public PlaybackMetricsFactory(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public PlaybackMetrics create(String playbackId) {
+        return new PlaybackMetrics(registry, playbackId);
+    }
+}
@@ -0,0 +1,17 @@
+package com.cyurtoz.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class CaptureInfo {
+
+    private String name;
+    private List<String> topics;
+    private String compression;
+    private long messages;
+    private long sizeBytes;
+    private long firstTimestamp;
+    private long lastTimestamp;
+}
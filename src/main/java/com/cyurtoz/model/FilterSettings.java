@@ -0,0 +1,34 @@
+package com.cyurtoz.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Which records of the window are played. All given conditions must hold; an empty settings object keeps everything.
+ */
+@Data
+public class FilterSettings {
+
+    /**
+     * Regular expression the whole UTF-8 key must match.
+     */
+    private String keyPattern;
+    /**
+     * Keys to keep, compared byte for byte with the UTF-8 encoding.
+     */
+    private List<String> keys;
+    /**
+     * Headers that must be present, as {@code name=value} or just {@code name}.
+     */
+    private List<String> headers;
+    /**
+     * Dotted path into a JSON value, such as {@code $.customer.country}, compared with {@code jsonValue}.
+     */
+    private String jsonPath;
+    private String jsonValue;
+    /**
+     * Share of records to keep, chosen by a hash of the key so the same keys are kept on every replay.
+     */
+    private double sampleRate = 1.0;
+}
@@ -2,11 +2,43 @@ package com.cyurtoz.model;
 
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import org.apache.kafka.common.header.Headers;
 
 @Getter
 @AllArgsConstructor
 public class KafkaMessage<T> {
     private long timestamp;
     private T payload;
+    private byte[] key;
+    private Headers headers;
+    private String topic;
+    private Integer partition;
+    /**
+     * Offset in the source partition, if the message was read from the source cluster.
+     */
+    private Long offset;
 
+    public KafkaMessage(long timestamp, T payload) {
+        this(timestamp, payload, null, null, null, null, null);
+    }
+
+    public KafkaMessage(long timestamp, T payload, byte[] key, Headers headers, String topic, Integer partition) {
+        this(timestamp, payload, key, headers, topic, partition, null);
+    }
+
+    /**
+     * @return a copy of this message carrying another payload, keeping key, headers and source position
+     */
+    public <U> KafkaMessage<U> withPayload(U payload) {
+        return new KafkaMessage<>(timestamp, payload, key, headers, topic, partition, offset);
+    }
+
+    /**
+     * @return key and value size of a raw message; a decoded payload counts as zero
+     */
+    public long rawSize() {
+        long size = key == null ? 0 : key.length;
+        if (payload instanceof byte[]) size += ((byte[]) payload).length;
+        return size;
+    }
 }
@@ -0,0 +1,16 @@
+package com.cyurtoz.model;
+
+public enum PacingMode {
+    /**
+     * Keeps the original gaps between messages, divided by the playback speed.
+     */
+    SPEED,
+    /**
+     * Sends as fast as the producer allows.
+     */
+    UNTHROTTLED,
+    /**
+     * Sends at a fixed rate, enforced by a token bucket.
+     */
+    RATE
+}
@@ -0,0 +1,20 @@
+package com.cyurtoz.model;
+
+import lombok.Data;
+
+/**
+ * How a playback spaces its messages. {@code targetRate} and {@code burst} only apply to {@link PacingMode#RATE}.
+ */
+@Data
+public class PacingSettings {
+
+    public enum RateUnit {MESSAGES, BYTES}
+
+    private PacingMode pacingMode = PacingMode.SPEED;
+    private double targetRate;
+    private RateUnit rateUnit = RateUnit.MESSAGES;
+    /**
+     * Largest amount that may be sent at once after an idle period; 0 means one second worth of {@code targetRate}.
+     */
+    private long burst;
+}
@@ -0,0 +1,35 @@
+package com.cyurtoz.model;
+
+import lombok.Data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Everything needed to start a playback again: where it reads from, what it plays and how.
+ */
+@Data
+public class PlaybackDefinition {
+
+    /**
+     * Capture file to read from, or null to read from the source cluster.
+     */
+    private String captureName;
+    private Map<String, String> topicMappings = new LinkedHashMap<>();
+    private double speed;
+    private long windowStart;
+    private long windowEnd;
+    private boolean streaming;
+    private boolean preservePartitions;
+    private ProducerSettings producerSettings = new ProducerSettings();
+    private PacingSettings pacingSettings = new PacingSettings();
+    private FilterSettings filterSettings = new FilterSettings();
+    /**
+     * Set when several instances share the playback: this instance plays share {@code memberIndex} of
+     * {@code memberCount} and plays the window start at wall clock time {@code startEpochMs}.
+     */
+    private boolean clustered;
+    private int memberIndex;
+    private int memberCount = 1;
+    private long startEpochMs;
+}
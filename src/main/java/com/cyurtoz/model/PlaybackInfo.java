@@ -2,6 +2,9 @@ package com.cyurtoz.model;
 
 import lombok.Data;
 
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
 
@@ -9,19 +12,67 @@ import java.util.UUID;
 public class PlaybackInfo {
 
     private String id;
+    private PlaybackStatus status = PlaybackStatus.STARTING;
+    /**
+     * Why the playback failed to start.
+     */
+    private String error;
     private String hostTopic;
     private String targetTopic;
+    private Map<String, String> topicMappings;
     private double speed;
+    private boolean preservePartitions;
+    private long sentMessages;
+    private long failedMessages;
+    private PacingMode pacingMode;
+    private double targetRate;
+    private long achievedMessagesPerSecond;
+    private long achievedBytesPerSecond;
+    /**
+     * Mean and largest difference between send and due time of the messages of the last second, early or late.
+     */
+    private long meanTimingErrorMicros;
+    private long maxTimingErrorMicros;
+    private boolean paused;
+    private long windowStart;
+    private long windowEnd;
+    private long position;
+    private double progress;
+    private long dispatchedMessages;
+    /**
+     * Number of instances sharing the playback, 0 if it is not clustered, and the share this instance plays.
+     */
+    private int memberCount;
+    private int memberIndex;
 
     public static PlaybackInfo create(String hostTopic, String destinationTopic, double playbackSpeed) {
         PlaybackInfo playbackInfo = new PlaybackInfo();
         playbackInfo.id = UUID.randomUUID().toString();
         playbackInfo.hostTopic = hostTopic;
         playbackInfo.targetTopic = destinationTopic;
+        playbackInfo.topicMappings = Map.of(hostTopic, destinationTopic);
         playbackInfo.speed = playbackSpeed;
         return playbackInfo;
     }
 
+    public static PlaybackInfo create(String hostTopic, String destinationTopic, double playbackSpeed,
+                                      Date startDate, Date endDate) {
+        PlaybackInfo playbackInfo = create(hostTopic, destinationTopic, playbackSpeed);
+        playbackInfo.windowStart = startDate.getTime();
+        playbackInfo.windowEnd = endDate.getTime();
+        return playbackInfo;
+    }
+
+    /**
+     * @param topicMappings destination topic of each source topic
+     */
+    public static PlaybackInfo create(Map<String, String> topicMappings, double playbackSpeed, Date startDate, Date endDate) {
+        PlaybackInfo playbackInfo = create(String.join(",", topicMappings.keySet()),
+                String.join(",", topicMappings.values()), playbackSpeed, startDate, endDate);
+        playbackInfo.topicMappings = new LinkedHashMap<>(topicMappings);
+        return playbackInfo;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
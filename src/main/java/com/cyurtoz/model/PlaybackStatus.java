@@ -0,0 +1,16 @@
+package com.cyurtoz.model;
+
+public enum PlaybackStatus {
+    /**
+     * Created, its window is being looked up or prefetched.
+     */
+    STARTING,
+    /**
+     * Dispatching messages, or paused.
+     */
+    PLAYING,
+    /**
+     * Could not be started, see the error of the playback.
+     */
+    FAILED
+}
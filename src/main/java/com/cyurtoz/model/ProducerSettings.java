@@ -0,0 +1,17 @@
+package com.cyurtoz.model;
+
+import lombok.Data;
+
+/**
+ * Producer tuning of a playback. Playbacks with equal settings share one producer.
+ */
+@Data
+public class ProducerSettings {
+
+    private int lingerMs = 5;
+    private int batchSize = 128 * 1024;
+    private String compressionType = "lz4";
+    private String acks = "1";
+    private boolean idempotence = false;
+    private int maxInFlightSends = 10_000;
+}
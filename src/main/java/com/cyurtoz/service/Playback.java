@@ -0,0 +1,85 @@
+package com.cyurtoz.service;
+
+import com.cyurtoz.dispatch.PlaybackCursor;
+import com.cyurtoz.kafka.PlaybackSender;
+import com.cyurtoz.metrics.PlaybackMetrics;
+import com.cyurtoz.model.PlaybackDefinition;
+import com.cyurtoz.model.PlaybackInfo;
+import com.cyurtoz.store.OffsetTracker;
+import com.cyurtoz.store.PlaybackCheckpoint;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A running playback: its description, its position in the message sequence, its producer and its meters.
+ * Playbacks resumed from a checkpoint count their position and dispatched messages from where the checkpoint left off.
+ */
+@Getter
+@AllArgsConstructor
+class Playback {
+    private final PlaybackInfo info;
+    private final PlaybackCursor<?> cursor;
+    private final PlaybackSender sender;
+    private final PlaybackMetrics metrics;
+    /**
+     * Null for playbacks that cannot be restarted, such as those with a custom handler.
+     */
+    private final PlaybackDefinition definition;
+    private final OffsetTracker offsets;
+    private final long resumedPosition;
+    private final long resumedDispatched;
+
+    /**
+     * @return the info with the current progress, send counters and the rates and timing error of the last second
+     * filled in
+     */
+    PlaybackInfo snapshot() {
+        long position = getPosition();
+        long window = info.getWindowEnd() - info.getWindowStart();
+        info.setPaused(cursor.isPaused());
+        info.setDispatchedMessages(getDispatched());
+        info.setPosition(position);
+        if (position >= 0 && window > 0) {
+            info.setProgress(Math.min(1.0, Math.max(0.0, (double) (position - info.getWindowStart()) / window)));
+        }
+        info.setSentMessages(sender.getSent());
+        info.setFailedMessages(sender.getFailed());
+        info.setTargetRate(cursor.getTargetRate());
+        info.setAchievedMessagesPerSecond(cursor.getRateMeter().getMessagesPerSecond());
+        info.setAchievedBytesPerSecond(cursor.getRateMeter().getBytesPerSecond());
+        info.setMeanTimingErrorMicros(TimeUnit.NANOSECONDS.toMicros(cursor.getRateMeter().getMeanTimingErrorNanos()));
+        info.setMaxTimingErrorMicros(TimeUnit.NANOSECONDS.toMicros(cursor.getRateMeter().getMaxTimingErrorNanos()));
+        return info;
+    }
+
+    PlaybackCheckpoint checkpoint() {
+        var checkpoint = new PlaybackCheckpoint();
+        checkpoint.setId(info.getId());
+        checkpoint.setDefinition(definition);
+        checkpoint.setPosition(getPosition());
+        checkpoint.setDispatchedMessages(getDispatched());
+        checkpoint.setSpeed(info.getSpeed());
+        checkpoint.setPaused(cursor.isPaused());
+        checkpoint.setOffsets(offsets.snapshot());
+        return checkpoint;
+    }
+
+    private long getPosition() {
+        long position = cursor.getPosition();
+        return position >= 0 ? position : resumedPosition;
+    }
+
+    private long getDispatched() {
+        return resumedDispatched + cursor.getDispatched();
+    }
+
+    /**
+     * Waits for the playback's outstanding sends and releases the producer and the meters.
+     */
+    void close() {
+        sender.close();
+        metrics.close();
+    }
+}
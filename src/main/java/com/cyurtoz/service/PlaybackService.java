@@ -1,103 +1,583 @@
 package com.cyurtoz.service;
 
+import com.cyurtoz.capture.CaptureService;
+import com.cyurtoz.cluster.ClusterCommand;
+import com.cyurtoz.cluster.ClusterCoordinator;
+import com.cyurtoz.dispatch.Pacer;
+import com.cyurtoz.dispatch.PlaybackCursor;
+import com.cyurtoz.dispatch.SpeedPacer;
+import com.cyurtoz.dispatch.TimingWheelDispatcher;
+import com.cyurtoz.filter.MessageFilter;
 import com.cyurtoz.handler.CustomPlaybackHandler;
+import com.cyurtoz.handler.HandlerExecutor;
+import com.cyurtoz.kafka.MessageStream;
+import com.cyurtoz.kafka.OffHeapMessageStream;
+import com.cyurtoz.kafka.PartitionShare;
 import com.cyurtoz.kafka.SourceKafkaService;
 import com.cyurtoz.kafka.TargetKafkaService;
+import com.cyurtoz.metrics.PlaybackMetricsFactory;
+import com.cyurtoz.model.FilterSettings;
 import com.cyurtoz.model.KafkaMessage;
+import com.cyurtoz.model.PacingMode;
+import com.cyurtoz.model.PacingSettings;
+import com.cyurtoz.model.PlaybackDefinition;
 import com.cyurtoz.model.PlaybackInfo;
+import com.cyurtoz.model.PlaybackStatus;
+import com.cyurtoz.model.ProducerSettings;
+import com.cyurtoz.store.OffsetTracker;
+import com.cyurtoz.store.PlaybackCheckpoint;
+import com.cyurtoz.store.PlaybackStore;
+import com.cyurtoz.util.DaemonThreads;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class PlaybackService {
 
-    private final ConcurrentHashMap<PlaybackInfo, ScheduledExecutorService> ongoingPlaybacks;
+    private static final Duration FIRST_MESSAGE_TIMEOUT = Duration.ofSeconds(30);
+
+    private final ConcurrentHashMap<String, Playback> ongoingPlaybacks;
+    private final ConcurrentHashMap<String, PlaybackInfo> startingPlaybacks;
+    /**
+     * Cluster commands that arrived while their playback was starting, guarded by itself.
+     */
+    private final Map<String, List<ClusterCommand>> pendingClusterCommands;
+    private final ExecutorService starter;
+    private final ExecutorService closer;
     private final TargetKafkaService targetKafkaService;
     private final SourceKafkaService sourceKafkaService;
+    private final TimingWheelDispatcher dispatcher;
+    private final PlaybackMetricsFactory metricsFactory;
+    private final HandlerExecutor handlerExecutor;
+    private final CaptureService captureService;
+    private final PlaybackStore playbackStore;
+    private final ClusterCoordinator clusterCoordinator;
+    private final long clusterStartDelayMs;
 
-    public PlaybackService(TargetKafkaService targetKafkaService, SourceKafkaService sourceKafkaService) {
+    public PlaybackService(TargetKafkaService targetKafkaService, SourceKafkaService sourceKafkaService,
+                           TimingWheelDispatcher dispatcher, PlaybackMetricsFactory metricsFactory,
+                           HandlerExecutor handlerExecutor, CaptureService captureService, PlaybackStore playbackStore,
+                           ClusterCoordinator clusterCoordinator,
+                           @Value("${kafka-playback-service.playback.start-threads:4}") int startThreads,
+                           @Value("${kafka-playback-service.cluster.start-delay-ms:5000}") long clusterStartDelayMs) {
         this.ongoingPlaybacks = new ConcurrentHashMap<>();
+        this.startingPlaybacks = new ConcurrentHashMap<>();
+        this.pendingClusterCommands = new HashMap<>();
+        this.starter = Executors.newFixedThreadPool(Math.max(startThreads, 1), DaemonThreads.numbered("playback-start-"));
+        this.closer = Executors.newFixedThreadPool(Math.max(startThreads, 1), DaemonThreads.numbered("playback-close-"));
         this.targetKafkaService = targetKafkaService;
         this.sourceKafkaService = sourceKafkaService;
+        this.dispatcher = dispatcher;
+        this.metricsFactory = metricsFactory;
+        this.handlerExecutor = handlerExecutor;
+        this.captureService = captureService;
+        this.playbackStore = playbackStore;
+        this.clusterCoordinator = clusterCoordinator;
+        this.clusterStartDelayMs = clusterStartDelayMs;
+        clusterCoordinator.addListener(this::apply);
+    }
+
+    /**
+     * Plays the window back byte for byte: keys, values and headers are forwarded without being deserialized,
+     * so any serialization format works. Records rejected by {@code filterSettings} are dropped while fetching.
+     */
+    public String createNewPlayback(String sourceTopic, String destinationTopic, double playbackSpeed, Date startDate, Date endDate,
+                                    boolean preservePartitions, ProducerSettings producerSettings,
+                                    PacingSettings pacingSettings, FilterSettings filterSettings) {
+        return start(define(null, Map.of(sourceTopic, destinationTopic), playbackSpeed, startDate, endDate, false,
+                preservePartitions, producerSettings, pacingSettings, filterSettings), null);
+    }
+
+    /**
+     * Starts playing while the window is still being fetched, instead of loading it into memory first.
+     */
+    public String createNewStreamingPlayback(String sourceTopic, String destinationTopic, double playbackSpeed,
+                                             Date startDate, Date endDate, boolean preservePartitions,
+                                             ProducerSettings producerSettings, PacingSettings pacingSettings,
+                                             FilterSettings filterSettings) {
+        return start(define(null, Map.of(sourceTopic, destinationTopic), playbackSpeed, startDate, endDate, true,
+                preservePartitions, producerSettings, pacingSettings, filterSettings), null);
+    }
+
+    /**
+     * Plays several topics as one playback against a single clock. Their windows are merged into one timestamp
+     * order, so the relative order of messages across topics is kept, and each message goes to the destination
+     * mapped to the topic it was read from. All topics share one cursor on the dispatcher, so mapping more topics
+     * does not add threads.
+     *
+     * @param topicMappings destination topic of each source topic
+     */
+    public String createNewMultiTopicPlayback(Map<String, String> topicMappings, double playbackSpeed, Date startDate,
+                                              Date endDate, boolean streaming, boolean preservePartitions,
+                                              ProducerSettings producerSettings, PacingSettings pacingSettings,
+                                              FilterSettings filterSettings) {
+        return start(define(null, topicMappings, playbackSpeed, startDate, endDate, streaming, preservePartitions,
+                producerSettings, pacingSettings, filterSettings), null);
+    }
+
+    /**
+     * Plays a time range of a capture file, streaming it from disk. Each captured topic in {@code topicMappings} goes
+     * to its destination; a missing range defaults to the whole capture.
+     */
+    public String createNewCapturePlayback(String captureName, Map<String, String> topicMappings, double playbackSpeed,
+                                           Date startDate, Date endDate, boolean preservePartitions,
+                                           ProducerSettings producerSettings, PacingSettings pacingSettings,
+                                           FilterSettings filterSettings) {
+        var capture = captureService.describe(captureName);
+        var start = startDate != null ? startDate : new Date(capture.getFirstTimestamp());
+        var end = endDate != null ? endDate : new Date(capture.getLastTimestamp());
+        return start(define(captureName, topicMappings, playbackSpeed, start, end, true, preservePartitions,
+                producerSettings, pacingSettings, filterSettings), null);
+    }
+
+    /**
+     * Plays the topics together with the other instances of the cluster, each instance sending its share of the
+     * partitions. The members are the instances alive now; all of them play the window start at the same wall clock
+     * time, {@code cluster.start-delay-ms} from now, so that time should cover finding or prefetching the window.
+     * Pause, resume, speed changes and stop apply to every member.
+     */
+    public String createNewClusterPlayback(Map<String, String> topicMappings, double playbackSpeed, Date startDate,
+                                           Date endDate, boolean streaming, boolean preservePartitions,
+                                           ProducerSettings producerSettings, PacingSettings pacingSettings,
+                                           FilterSettings filterSettings) {
+        if (!clusterCoordinator.isEnabled()) throw new RuntimeException("Cluster mode is disabled.");
+        if (topicMappings.isEmpty()) throw new RuntimeException("At least one topic mapping is required.");
+        topicMappings.values().forEach(this::validateDestination);
+        Pacer.create(pacingSettings, playbackSpeed);
+        MessageFilter.create(filterSettings);
+        var command = ClusterCommand.of(ClusterCommand.Type.START, UUID.randomUUID().toString());
+        command.setDefinition(define(null, topicMappings, playbackSpeed, startDate, endDate, streaming,
+                preservePartitions, producerSettings, pacingSettings, filterSettings));
+        command.setMembers(clusterCoordinator.members());
+        command.setEpochMs(System.currentTimeMillis() + clusterStartDelayMs);
+        clusterCoordinator.publish(command);
+        return command.getPlaybackId();
+    }
+
+    public List<String> listClusterMembers() {
+        if (!clusterCoordinator.isEnabled()) throw new RuntimeException("Cluster mode is disabled.");
+        return clusterCoordinator.members();
+    }
+
+    /**
+     * Applies a command of the cluster to this instance's share of the playback.
+     */
+    private void apply(ClusterCommand command) {
+        var id = command.getPlaybackId();
+        switch (command.getType()) {
+            case START:
+                int index = command.getMembers().indexOf(clusterCoordinator.getInstanceId());
+                if (index < 0) return;
+                var definition = command.getDefinition();
+                definition.setClustered(true);
+                definition.setMemberIndex(index);
+                definition.setMemberCount(command.getMembers().size());
+                definition.setStartEpochMs(command.getEpochMs());
+                start(id, definition, null);
+                break;
+            case PAUSE:
+            case RESUME:
+            case SPEED:
+                synchronized (pendingClusterCommands) {
+                    var playback = ongoingPlaybacks.get(id);
+                    if (playback != null) {
+                        apply(playback, command);
+                    } else if (startingPlaybacks.containsKey(id)) {
+                        pendingClusterCommands.computeIfAbsent(id, key -> new ArrayList<>()).add(command);
+                    }
+                }
+                break;
+            case STOP:
+                stopLocally(id);
+                break;
+            default:
+        }
     }
 
-    public String createNewPlayback(String sourceTopic, String destinationTopic, double playbackSpeed, Date startDate, Date endDate) {
-        var messages = initMessages(sourceTopic, destinationTopic, startDate, endDate, Object.class);
-        var info = PlaybackInfo.create(sourceTopic, destinationTopic, playbackSpeed);
-        schedulePlaybackMessages(messages, info);
+    /**
+     * Applies a command at its own time, which may lie in the past for commands that waited for the start.
+     */
+    private void apply(Playback playback, ClusterCommand command) {
+        long atNanos = ClusterCoordinator.nanosAt(command.getEpochMs());
+        switch (command.getType()) {
+            case PAUSE:
+                playback.getCursor().pause(atNanos);
+                break;
+            case RESUME:
+                playback.getCursor().resume(atNanos);
+                break;
+            case SPEED:
+                applySpeed(playback, command.getSpeed(), atNanos);
+                break;
+            default:
+        }
+    }
+
+    private boolean isClustered(String id) {
+        var playback = ongoingPlaybacks.get(id);
+        var info = playback != null ? playback.getInfo() : startingPlaybacks.get(id);
+        return info != null && info.getMemberCount() > 0;
+    }
+
+    private void publish(ClusterCommand.Type type, String id, double speed) {
+        var command = ClusterCommand.of(type, id);
+        command.setSpeed(speed);
+        clusterCoordinator.publish(command);
+    }
+
+    private PlaybackDefinition define(String captureName, Map<String, String> topicMappings, double playbackSpeed,
+                                      Date startDate, Date endDate, boolean streaming, boolean preservePartitions,
+                                      ProducerSettings producerSettings, PacingSettings pacingSettings,
+                                      FilterSettings filterSettings) {
+        var definition = new PlaybackDefinition();
+        definition.setCaptureName(captureName);
+        definition.setTopicMappings(new LinkedHashMap<>(topicMappings));
+        definition.setSpeed(playbackSpeed);
+        definition.setWindowStart(startDate.getTime());
+        definition.setWindowEnd(endDate.getTime());
+        definition.setStreaming(streaming);
+        definition.setPreservePartitions(preservePartitions);
+        definition.setProducerSettings(producerSettings);
+        definition.setPacingSettings(pacingSettings);
+        definition.setFilterSettings(filterSettings);
+        return definition;
+    }
+
+    /**
+     * Starts a playback from the beginning of its window, or where {@code checkpoint} left off.
+     * A resumed playback continues each partition after its last dispatched offset, and partitions without one
+     * from the checkpoint's position, so at most the messages of that one timestamp are sent again.
+     */
+    private String start(PlaybackDefinition definition, PlaybackCheckpoint checkpoint) {
+        return start(checkpoint == null ? null : checkpoint.getId(), definition, checkpoint);
+    }
+
+    /**
+     * A clustered playback plays only its share of the partitions, with its share of a target rate, and its
+     * pacer is anchored at the shared start epoch instead of at the first message.
+     *
+     * @param id id of the playback, or null for a new one
+     */
+    private String start(String id, PlaybackDefinition definition, PlaybackCheckpoint checkpoint) {
+        var topicMappings = definition.getTopicMappings();
+        if (topicMappings.isEmpty()) throw new RuntimeException("At least one topic mapping is required.");
+        if (definition.isClustered() && definition.getCaptureName() != null)
+            throw new RuntimeException("Captures cannot be played by a cluster.");
+        if (checkpoint == null) topicMappings.values().forEach(this::validateDestination);
+        double speed = checkpoint == null ? definition.getSpeed() : checkpoint.getSpeed();
+        var share = definition.isClustered()
+                ? new PartitionShare(definition.getMemberIndex(), definition.getMemberCount()) : PartitionShare.ALL;
+        var pacer = Pacer.create(shareOf(definition.getPacingSettings(), share.getCount()), speed);
+        if (definition.isClustered())
+            pacer.seek(definition.getWindowStart(), ClusterCoordinator.nanosAt(definition.getStartEpochMs()));
+        var filter = MessageFilter.create(definition.getFilterSettings());
+        var offsets = new OffsetTracker(checkpoint == null ? Map.of() : checkpoint.getOffsets());
+        long position = checkpoint == null ? -1L : checkpoint.getPosition();
+        var startDate = new Date(Math.max(definition.getWindowStart(), position));
+        var endDate = new Date(definition.getWindowEnd());
+
+        var info = PlaybackInfo.create(topicMappings, speed, new Date(definition.getWindowStart()), endDate);
+        if (id != null) info.setId(id);
+        info.setPreservePartitions(definition.isPreservePartitions());
+        info.setPacingMode(definition.getPacingSettings().getPacingMode());
+        if (definition.isClustered()) {
+            info.setMemberCount(share.getCount());
+            info.setMemberIndex(share.getIndex());
+        }
+        return launch(info, () -> {
+            MessageStream<byte[]> stream;
+            if (definition.getCaptureName() != null) {
+                stream = captureService.sourceOf(definition.getCaptureName())
+                        .streamRawMessagesBetween(topicMappings.keySet(), startDate, endDate, filter);
+                validateStream(stream);
+            } else if (definition.isStreaming()) {
+                stream = sourceKafkaService.streamRawMessagesFrom(topicMappings.keySet(), share, offsets.nextOffsets(),
+                        startDate, endDate, filter);
+                validateStream(stream);
+            } else {
+                var window = sourceKafkaService.prefetchRawMessagesBetween(topicMappings.keySet(), share,
+                        offsets.nextOffsets(), startDate, endDate, filter);
+                validateWindow(window);
+                stream = window;
+            }
+            startCursor(stream, info, definition.getProducerSettings(), pacer, definition, offsets, position,
+                    checkpoint == null ? 0L : checkpoint.getDispatchedMessages(),
+                    checkpoint != null && checkpoint.isPaused());
+        });
+    }
+
+    private static PacingSettings shareOf(PacingSettings settings, int memberCount) {
+        if (memberCount == 1 || settings.getPacingMode() != PacingMode.RATE) return settings;
+        var share = new PacingSettings();
+        share.setPacingMode(settings.getPacingMode());
+        share.setRateUnit(settings.getRateUnit());
+        share.setTargetRate(settings.getTargetRate() / memberCount);
+        if (settings.getBurst() > 0) share.setBurst(Math.max(settings.getBurst() / memberCount, 1));
+        return share;
+    }
+
+    /**
+     * Registers the playback as starting and opens its source on the start pool, so creating a playback returns its
+     * id right away instead of holding the request while the window is looked up or prefetched.
+     * A playback that fails to start stays listed as failed until it is stopped.
+     */
+    private String launch(PlaybackInfo info, Runnable open) {
+        startingPlaybacks.put(info.getId(), info);
+        starter.execute(() -> {
+            try {
+                open.run();
+            } catch (Throwable e) {
+                // Also out of memory errors, which would otherwise leave the playback starting forever
+                log.warn("Playback {} could not be started", info.getId(), e);
+                info.setError(e.getMessage());
+                info.setStatus(PlaybackStatus.FAILED);
+                playbackStore.remove(info.getId());
+                synchronized (pendingClusterCommands) {
+                    pendingClusterCommands.remove(info.getId());
+                }
+            }
+        });
         return info.getId();
     }
 
+    /**
+     * Streams the window through {@code handler} on the shared handler pool and plays the results as they come.
+     */
     public <T> String createNewPlaybackWithHandler(String sourceTopic, String destinationTopic, double playbackSpeed,
                                                    Date startDate, Date endDate, CustomPlaybackHandler<T> handler) {
+        validateDestination(destinationTopic);
+        var info = PlaybackInfo.create(sourceTopic, destinationTopic, playbackSpeed, startDate, endDate);
+        info.setPacingMode(PacingMode.SPEED);
+        return launch(info, () -> {
+            var source = sourceKafkaService.streamMessagesBetween(sourceTopic, startDate, endDate, handler.getType());
+            validateStream(source);
+            startCursor(handlerExecutor.start(source, handler), info, new ProducerSettings(),
+                    new SpeedPacer(playbackSpeed), null, new OffsetTracker(Map.of()), -1L, 0L, false);
+        });
+    }
 
-        List<KafkaMessage<T>> kafkaMessages = initMessages(sourceTopic, destinationTopic, startDate, endDate, handler.getType());
-        var mapped = kafkaMessages.stream().map(handler::handle).collect(Collectors.toList());
-        var info = PlaybackInfo.create(sourceTopic, destinationTopic, playbackSpeed);
-        var filtered = mapped.stream().filter(Optional::isPresent).map(Optional::get).collect(Collectors.toList());
-        schedulePlaybackMessages(filtered, info);
-        return info.getId();
+    private <T> void startCursor(MessageStream<T> stream, PlaybackInfo playbackInfo, ProducerSettings producerSettings,
+                                 Pacer pacer, PlaybackDefinition definition, OffsetTracker offsets, long resumedPosition,
+                                 long resumedDispatched, boolean paused) {
+        var metrics = metricsFactory.create(playbackInfo.getId());
+        var sender = targetKafkaService.openSender(producerSettings, metrics::topicMeters);
+        metrics.bind(stream);
+        var cursor = new PlaybackCursor<>(stream, dispatcher, pacer,
+                (message, dueNanos) -> {
+                    if (!sender.send(destinationOf(playbackInfo, message), message, playbackInfo.isPreservePartitions()))
+                        return false;
+                    metrics.recordTimingError(System.nanoTime() - dueNanos);
+                    offsets.record(message);
+                    return true;
+                },
+                () -> finish(playbackInfo.getId()));
+        var playback = new Playback(playbackInfo, cursor, sender, metrics, definition, offsets, resumedPosition,
+                resumedDispatched);
+        synchronized (pendingClusterCommands) {
+            // Applied before the first wake-up, so the cursor catches up with commands it missed while starting
+            ongoingPlaybacks.put(playbackInfo.getId(), playback);
+            var pending = pendingClusterCommands.remove(playbackInfo.getId());
+            if (pending != null) pending.forEach(command -> apply(playback, command));
+        }
+        if (startingPlaybacks.remove(playbackInfo.getId()) == null) {
+            // Stopped while starting
+            if (ongoingPlaybacks.remove(playbackInfo.getId(), playback)) {
+                cursor.cancel();
+                playback.close();
+            }
+            return;
+        }
+        playbackInfo.setStatus(PlaybackStatus.PLAYING);
+        // A member that restarts cannot rejoin the cluster's clock, so clustered playbacks are not resumed
+        if (definition != null && !definition.isClustered())
+            playbackStore.track(playbackInfo.getId(), playback::checkpoint);
+        if (paused) cursor.pause();
+        cursor.start();
     }
 
-    private <T> List<KafkaMessage<T>> initMessages(String sourceTopic, String destinationTopic, Date startDate, Date endDate, Class<T> type) {
-        validateDestination(destinationTopic);
-        List<KafkaMessage<T>> messages = sourceKafkaService.findMessagesBetween(sourceTopic, startDate, endDate, type);
-        validateMessages(messages);
-        return messages;
-    }
-
-    private <T> void schedulePlaybackMessages(List<KafkaMessage<T>> messages, PlaybackInfo playbackInfo) {
-        int size = messages.size();
-        var executor = Executors.newScheduledThreadPool(1);
-        ongoingPlaybacks.put(playbackInfo, executor);
-        for (int index = 0; index < size; index++) {
-            KafkaMessage<T> first = messages.get(0);
-            KafkaMessage<T> current = messages.get(index);
-            long diff = current.getTimestamp() - first.getTimestamp();
-            long delay = (long) ((double) diff / playbackInfo.getSpeed());
-            scheduleKafkaMessage(executor, playbackInfo, delay, current.getPayload());
-            if (index == size - 1) {
-                scheduleFinishMessage(executor, playbackInfo, delay);
+    /**
+     * Resumes the playbacks that were running when the service last stopped.
+     * Playbacks that cannot be resumed, for example because their source is gone, are dropped.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeStoredPlaybacks() {
+        for (PlaybackCheckpoint checkpoint : playbackStore.load()) {
+            try {
+                start(checkpoint.getDefinition(), checkpoint);
+                log.info("Resuming {} at {} after {} messages", checkpoint.getId(), checkpoint.getPosition(),
+                        checkpoint.getDispatchedMessages());
+            } catch (RuntimeException e) {
+                log.warn("Playback {} could not be resumed, dropping it", checkpoint.getId(), e);
+                playbackStore.remove(checkpoint.getId());
             }
         }
-        executor.shutdown();
     }
 
-    private void scheduleFinishMessage(ScheduledExecutorService executor, PlaybackInfo playbackInfo, long delay) {
-        executor.schedule(() -> ongoingPlaybacks.remove(playbackInfo), delay + 100L, TimeUnit.MILLISECONDS);
+    /**
+     * Stops every playback on shutdown without dropping its checkpoint, so it is resumed on the next start.
+     * Each playback is removed before it is cancelled, so a cursor seeing its closed stream as finished cannot
+     * take the finish path that deletes the checkpoint.
+     */
+    @PreDestroy
+    public void suspendAll() {
+        starter.shutdownNow();
+        closer.shutdown();
+        int suspended = 0;
+        for (String id : List.copyOf(ongoingPlaybacks.keySet())) {
+            var playback = ongoingPlaybacks.remove(id);
+            if (playback == null) continue;
+            playback.getCursor().cancel();
+            playback.close();
+            suspended++;
+        }
+        log.info("Suspended {} playbacks", suspended);
     }
 
-    private void scheduleKafkaMessage(ScheduledExecutorService executor, PlaybackInfo playbackInfo, long delay, Object message) {
-        executor.schedule(() -> targetKafkaService.send(playbackInfo.getTargetTopic(), message), delay, TimeUnit.MILLISECONDS);
+    /**
+     * Messages a handler built from scratch carry no source topic and go to the playback's target topic.
+     */
+    private String destinationOf(PlaybackInfo playbackInfo, KafkaMessage<?> message) {
+        return playbackInfo.getTopicMappings().getOrDefault(message.getTopic(), playbackInfo.getTargetTopic());
+    }
+
+    private void finish(String id) {
+        var playback = ongoingPlaybacks.remove(id);
+        if (playback == null) return;
+        playbackStore.remove(id);
+        closeLater(playback, () -> log.info("Finished {} - {} sent, {} failed", id, playback.getSender().getSent(),
+                playback.getSender().getFailed()));
+    }
+
+    /**
+     * Closes the playback on the close pool, since waiting for its sends must not hold a dispatch thread or the
+     * cluster's control thread.
+     */
+    private void closeLater(Playback playback, Runnable then) {
+        Runnable close = () -> {
+            playback.close();
+            then.run();
+        };
+        try {
+            closer.execute(close);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            close.run();
+        }
     }
 
     private boolean isDestinationNotUsed(String destination) {
-        return ongoingPlaybacks.keySet().stream().noneMatch(e -> e.getTargetTopic().equals(destination));
+        return ongoingPlaybacks.values().stream().noneMatch(e -> e.getInfo().getTopicMappings().containsValue(destination))
+                && startingPlaybacks.values().stream().noneMatch(info -> info.getStatus() == PlaybackStatus.STARTING
+                && info.getTopicMappings().containsValue(destination));
     }
 
     public List<PlaybackInfo> listPlaybacks() {
-        return new ArrayList<>(ongoingPlaybacks.keySet());
+        var playbacks = ongoingPlaybacks.values().stream().map(Playback::snapshot).collect(Collectors.toList());
+        playbacks.addAll(startingPlaybacks.values());
+        return playbacks;
+    }
+
+    public PlaybackInfo getPlayback(String id) {
+        var playback = ongoingPlaybacks.get(id);
+        if (playback != null) return playback.snapshot();
+        var starting = startingPlaybacks.get(id);
+        if (starting == null) throw new RuntimeException("Playback could not be found.");
+        return starting;
+    }
+
+    public void pause(String id) {
+        if (isClustered(id)) {
+            publish(ClusterCommand.Type.PAUSE, id, 0);
+            return;
+        }
+        findPlayback(id).getCursor().pause();
+        log.info("Paused {}", id);
+    }
+
+    public void resume(String id) {
+        if (isClustered(id)) {
+            publish(ClusterCommand.Type.RESUME, id, 0);
+            return;
+        }
+        findPlayback(id).getCursor().resume();
+        log.info("Resumed {}", id);
+    }
+
+    public void changeSpeed(String id, double playbackSpeed) {
+        if (playbackSpeed <= 0) throw new RuntimeException("Playback speed must be positive.");
+        var playback = findPlayback(id);
+        if (playback.getInfo().getPacingMode() != PacingMode.SPEED)
+            throw new RuntimeException("Speed can only be changed in SPEED pacing mode.");
+        if (playback.getInfo().getMemberCount() > 0) {
+            publish(ClusterCommand.Type.SPEED, id, playbackSpeed);
+            return;
+        }
+        applySpeed(playback, playbackSpeed, System.nanoTime());
+    }
+
+    private void applySpeed(Playback playback, double playbackSpeed, long atNanos) {
+        if (!playback.getCursor().setSpeed(playbackSpeed, atNanos))
+            throw new RuntimeException("Speed can only be changed in SPEED pacing mode.");
+        playback.getInfo().setSpeed(playbackSpeed);
+        log.info("Changed speed of {} to {}", playback.getInfo().getId(), playbackSpeed);
+    }
+
+    public void seek(String id, Date position) {
+        var playback = findPlayback(id);
+        if (playback.getInfo().getMemberCount() > 0)
+            throw new RuntimeException("Playbacks of a cluster cannot seek.");
+        if (!playback.getCursor().seek(position.getTime()))
+            throw new RuntimeException("Streaming playbacks can only seek forward.");
+        playback.getOffsets().clear();
+        log.info("Moved {} to {}", id, position);
+    }
+
+    private Playback findPlayback(String id) {
+        var playback = ongoingPlaybacks.get(id);
+        if (playback != null) return playback;
+        if (startingPlaybacks.containsKey(id)) throw new RuntimeException("Playback has not started playing.");
+        throw new RuntimeException("Playback could not be found.");
     }
 
     public void stop(String id) {
-        Optional<PlaybackInfo> first = ongoingPlaybacks.keySet().stream().filter(e -> e.getId().equals(id)).findFirst();
-        first.ifPresent(info -> {
-            List<Runnable> runnables = ongoingPlaybacks.get(info).shutdownNow();
-            ongoingPlaybacks.remove(info);
-            targetKafkaService.stopForTopic(info.getTargetTopic());
-            log.info("Stopped {} - {} messages were cancelled", id, runnables.size());
-        });
+        if (isClustered(id)) publish(ClusterCommand.Type.STOP, id, 0);
+        else stopLocally(id);
+    }
+
+    private void stopLocally(String id) {
+        synchronized (pendingClusterCommands) {
+            pendingClusterCommands.remove(id);
+        }
+        var starting = startingPlaybacks.remove(id);
+        var playback = ongoingPlaybacks.remove(id);
+        if (playback == null) {
+            if (starting == null) return;
+            playbackStore.remove(id);
+            log.info("Stopped {} before it started playing", id);
+            return;
+        }
+        playbackStore.remove(id);
+        playback.getCursor().cancel();
+        closeLater(playback, () -> log.info("Stopped {} after {} messages", id, playback.getCursor().getDispatched()));
     }
 
     private void validateDestination(String destinationTopic) {
@@ -105,7 +585,17 @@ public class PlaybackService {
             throw new RuntimeException("Destination topic is used.");
     }
 
-    private <T> void validateMessages(List<KafkaMessage<T>> messages) {
-        if (messages.isEmpty()) throw new RuntimeException("No data could be found in source topic.");
+    private void validateWindow(OffHeapMessageStream window) {
+        if (window.isFinished()) {
+            window.close();
+            throw new RuntimeException("No data could be found in source topic.");
+        }
+    }
+
+    private <T> void validateStream(MessageStream<T> stream) {
+        if (!stream.awaitNext(FIRST_MESSAGE_TIMEOUT)) {
+            stream.close();
+            throw new RuntimeException("No data could be found in source topic.");
+        }
     }
 }
@@ -0,0 +1,51 @@
+package com.cyurtoz.store;
+
+import com.cyurtoz.model.KafkaMessage;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Offset of the last dispatched message per source partition, updated by the dispatch thread and read by the
+ * checkpoint writer.
+ */
+public class OffsetTracker {
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<Integer, Long>> offsets;
+
+    public OffsetTracker(Map<String, Map<Integer, Long>> initial) {
+        this.offsets = new ConcurrentHashMap<>();
+        initial.forEach((topic, partitions) -> offsets.put(topic, new ConcurrentHashMap<>(partitions)));
+    }
+
+    public void record(KafkaMessage<?> message) {
+        if (message.getTopic() == null || message.getPartition() == null || message.getOffset() == null) return;
+        offsets.computeIfAbsent(message.getTopic(), topic -> new ConcurrentHashMap<>())
+                .put(message.getPartition(), message.getOffset());
+    }
+
+    /**
+     * Forgets every offset, for when the playback jumps elsewhere in its window.
+     */
+    public void clear() {
+        offsets.clear();
+    }
+
+    public Map<String, Map<Integer, Long>> snapshot() {
+        var copy = new HashMap<String, Map<Integer, Long>>();
+        offsets.forEach((topic, partitions) -> copy.put(topic, new HashMap<>(partitions)));
+        return copy;
+    }
+
+    /**
+     * @return the offset each partition continues at
+     */
+    public Map<TopicPartition, Long> nextOffsets() {
+        var next = new HashMap<TopicPartition, Long>();
+        offsets.forEach((topic, partitions) ->
+                partitions.forEach((partition, offset) -> next.put(new TopicPartition(topic, partition), offset + 1)));
+        return next;
+    }
+}
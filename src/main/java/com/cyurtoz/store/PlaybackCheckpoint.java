@@ -0,0 +1,28 @@
+package com.cyurtoz.store;
+
+import com.cyurtoz.model.PlaybackDefinition;
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Durable state of a playback: its definition and how far it got.
+ */
+@Data
+public class PlaybackCheckpoint {
+
+    private String id;
+    private PlaybackDefinition definition;
+    /**
+     * Timestamp of the last dispatched message, or -1 before the first one.
+     */
+    private long position = -1L;
+    private long dispatchedMessages;
+    private double speed;
+    private boolean paused;
+    /**
+     * Offset of the last dispatched message per source topic and partition.
+     */
+    private Map<String, Map<Integer, Long>> offsets = new HashMap<>();
+}
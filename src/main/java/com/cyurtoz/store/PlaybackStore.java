@@ -0,0 +1,148 @@
+package com.cyurtoz.store;
+
+import com.cyurtoz.util.DaemonThreads;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a checkpoint file per running playback in {@code store.directory}, so playbacks can be resumed after a
+ * restart. The dispatch threads never write: a single background thread collects the checkpoints of all playbacks
+ * every {@code checkpoint-interval-ms} and writes the ones that changed. Files are replaced atomically, so a crash
+ * leaves either the previous or the new checkpoint.
+ */
+@Component
+@Slf4j
+public class PlaybackStore {
+
+    private static final String SUFFIX = ".json";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final ObjectMapper mapper;
+    private final Map<String, Supplier<PlaybackCheckpoint>> tracked;
+    private final Map<String, PlaybackCheckpoint> written;
+    private final ScheduledExecutorService writer;
+
+    public PlaybackStore(@Value("${kafka-playback-service.store.enabled:true}") boolean enabled,
+                         @Value("${kafka-playback-service.store.directory:${java.io.tmpdir}/kafka-playback-store}") String directory,
+                         @Value("${kafka-playback-service.store.checkpoint-interval-ms:1000}") long checkpointIntervalMs) {
+        this.directory = Paths.get(directory);
+        this.mapper = new ObjectMapper();
+        this.tracked = new ConcurrentHashMap<>();
+        this.written = new ConcurrentHashMap<>();
+        this.writer = Executors.newSingleThreadScheduledExecutor(DaemonThreads.single("playback-checkpoints"));
+        this.enabled = enabled && createDirectory();
+        if (this.enabled) {
+            writer.scheduleWithFixedDelay(this::checkpoint, checkpointIntervalMs, checkpointIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private boolean createDirectory() {
+        try {
+            Files.createDirectories(directory);
+            return true;
+        } catch (IOException e) {
+            log.warn("Playback store disabled, {} is not usable", directory, e);
+            return false;
+        }
+    }
+
+    /**
+     * Checkpoints the playback from now on.
+     *
+     * @param checkpoint called on the checkpoint thread to take the playback's current state
+     */
+    public void track(String id, Supplier<PlaybackCheckpoint> checkpoint) {
+        if (enabled) tracked.put(id, checkpoint);
+    }
+
+    /**
+     * Stops checkpointing the playback and deletes its checkpoint.
+     */
+    public void remove(String id) {
+        if (!enabled) return;
+        tracked.remove(id);
+        if (writer.isShutdown()) return;
+        writer.execute(() -> {
+            written.remove(id);
+            try {
+                Files.deleteIfExists(pathOf(id));
+            } catch (IOException e) {
+                log.warn("Checkpoint of {} could not be deleted", id, e);
+            }
+        });
+    }
+
+    /**
+     * @return the checkpoints left by the previous run
+     */
+    public List<PlaybackCheckpoint> load() {
+        if (!enabled) return new ArrayList<>();
+        try (var files = Files.list(directory)) {
+            var checkpoints = new ArrayList<PlaybackCheckpoint>();
+            for (Path file : files.filter(path -> path.toString().endsWith(SUFFIX)).collect(Collectors.toList())) {
+                try {
+                    checkpoints.add(mapper.readValue(file.toFile(), PlaybackCheckpoint.class));
+                } catch (IOException e) {
+                    log.warn("Checkpoint {} could not be read, skipping it", file, e);
+                }
+            }
+            return checkpoints;
+        } catch (IOException e) {
+            log.warn("Checkpoints in {} could not be listed", directory, e);
+            return new ArrayList<>();
+        }
+    }
+
+    private void checkpoint() {
+        tracked.forEach((id, supplier) -> {
+            try {
+                var checkpoint = supplier.get();
+                if (checkpoint.equals(written.get(id)) || !tracked.containsKey(id)) return;
+                var tempFile = directory.resolve(id + ".tmp");
+                mapper.writeValue(tempFile.toFile(), checkpoint);
+                Files.move(tempFile, pathOf(id), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                written.put(id, checkpoint);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Checkpointing {} failed", id, e);
+            }
+        });
+    }
+
+    private Path pathOf(String id) {
+        return directory.resolve(id + SUFFIX);
+    }
+
+    /**
+     * Writes a last checkpoint of every running playback, so they continue where they stopped.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) return;
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        checkpoint();
+    }
+}
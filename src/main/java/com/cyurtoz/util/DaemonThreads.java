@@ -0,0 +1,35 @@
+package com.cyurtoz.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factories for the service's background pools. Their threads are daemons, so a pool that is not shut down
+ * never keeps the JVM alive, and named, so they can be told apart in thread dumps.
+ */
+public final class DaemonThreads {
+
+    private DaemonThreads() {
+    }
+
+    /**
+     * @return a factory naming its threads {@code prefix} followed by a sequence number starting at 1
+     */
+    public static ThreadFactory numbered(String prefix) {
+        var counter = new AtomicInteger();
+        return runnable -> create(runnable, prefix + counter.incrementAndGet());
+    }
+
+    /**
+     * @return a factory naming every thread {@code name}, for single-threaded executors
+     */
+    public static ThreadFactory single(String name) {
+        return runnable -> create(runnable, name);
+    }
+
+    private static Thread create(Runnable runnable, String name) {
+        var thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,43 @@
+package com.cyurtoz.web;
+
+import com.cyurtoz.capture.CaptureCompression;
+import com.cyurtoz.capture.CaptureService;
+import com.cyurtoz.filter.MessageFilter;
+import com.cyurtoz.model.CaptureInfo;
+import com.cyurtoz.model.FilterSettings;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Date;
+import java.util.List;
+
+@RestController
+public class CaptureController {
+
+    private final CaptureService captureService;
+
+    public CaptureController(CaptureService captureService) {
+        this.captureService = captureService;
+    }
+
+    @PostMapping("/captures")
+    public CaptureInfo createCapture(@RequestParam String name,
+                                     @RequestParam List<String> sourceTopics,
+                                     @RequestParam(name = "dateBegin") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
+                                     @RequestParam(name = "dateEnd") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+                                     @RequestParam(defaultValue = "LZ4") CaptureCompression compression,
+                                     FilterSettings filterSettings) {
+        return captureService.export(name, sourceTopics, startDate, endDate, compression,
+                MessageFilter.create(filterSettings));
+    }
+
+    @GetMapping("/captures")
+    public List<CaptureInfo> listCaptures() {
+        return captureService.listCaptures();
+    }
+
+    @GetMapping("/captures/{captureName}")
+    public CaptureInfo describeCapture(@PathVariable("captureName") String captureName) {
+        return captureService.describe(captureName);
+    }
+}
@@ -1,12 +1,17 @@
 package com.cyurtoz.web;
 
+import com.cyurtoz.model.FilterSettings;
+import com.cyurtoz.model.PacingSettings;
 import com.cyurtoz.model.PlaybackInfo;
+import com.cyurtoz.model.ProducerSettings;
 import com.cyurtoz.service.PlaybackService;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 public class PlaybackController {
@@ -24,8 +29,87 @@ public class PlaybackController {
                                    @RequestParam(name = "dateBegin", required = false, defaultValue = "2020-09-22T12:00:00.000+03:00")
                                        @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date startDate,
                                    @RequestParam(name = "dateEnd", required = false, defaultValue = "2020-09-22T15:00:00.000+03:00")
-                                       @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate) {
-        return playbackService.createNewPlayback(sourceTopic, destinationTopic, playbackSpeed, startDate, endDate);
+                                       @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+                                   @RequestParam(defaultValue = "false") boolean streaming,
+                                   @RequestParam(defaultValue = "false") boolean preservePartitions,
+                                   ProducerSettings producerSettings,
+                                   PacingSettings pacingSettings,
+                                   FilterSettings filterSettings) {
+        if (streaming)
+            return playbackService.createNewStreamingPlayback(sourceTopic, destinationTopic, playbackSpeed, startDate, endDate,
+                    preservePartitions, producerSettings, pacingSettings, filterSettings);
+        return playbackService.createNewPlayback(sourceTopic, destinationTopic, playbackSpeed, startDate, endDate,
+                preservePartitions, producerSettings, pacingSettings, filterSettings);
+    }
+
+    /**
+     * @param topics source and destination of each topic as {@code source:destination}
+     */
+    @PostMapping("/playbacks/multi-topic")
+    public String startNewMultiTopicPlayback(@RequestParam List<String> topics,
+                                             @RequestParam(defaultValue = "1") double playbackSpeed,
+                                             @RequestParam(name = "dateBegin") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
+                                             @RequestParam(name = "dateEnd") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+                                             @RequestParam(defaultValue = "true") boolean streaming,
+                                             @RequestParam(defaultValue = "false") boolean preservePartitions,
+                                             ProducerSettings producerSettings,
+                                             PacingSettings pacingSettings,
+                                             FilterSettings filterSettings) {
+        return playbackService.createNewMultiTopicPlayback(parseTopicMappings(topics), playbackSpeed, startDate, endDate,
+                streaming, preservePartitions, producerSettings, pacingSettings, filterSettings);
+    }
+
+    /**
+     * Plays the topics together with the other live instances, each sending its share of the partitions.
+     *
+     * @param topics source and destination of each topic as {@code source:destination}
+     */
+    @PostMapping("/playbacks/cluster")
+    public String startNewClusterPlayback(@RequestParam List<String> topics,
+                                          @RequestParam(defaultValue = "1") double playbackSpeed,
+                                          @RequestParam(name = "dateBegin") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
+                                          @RequestParam(name = "dateEnd") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+                                          @RequestParam(defaultValue = "true") boolean streaming,
+                                          @RequestParam(defaultValue = "false") boolean preservePartitions,
+                                          ProducerSettings producerSettings,
+                                          PacingSettings pacingSettings,
+                                          FilterSettings filterSettings) {
+        return playbackService.createNewClusterPlayback(parseTopicMappings(topics), playbackSpeed, startDate, endDate,
+                streaming, preservePartitions, producerSettings, pacingSettings, filterSettings);
+    }
+
+    @GetMapping("/cluster/members")
+    public List<String> listClusterMembers() {
+        return playbackService.listClusterMembers();
+    }
+
+    /**
+     * @param topics captured topic and destination of each topic to play, as {@code source:destination}
+     */
+    @PostMapping("/captures/{captureName}/playbacks")
+    public String startNewCapturePlayback(@PathVariable("captureName") String captureName,
+                                          @RequestParam List<String> topics,
+                                          @RequestParam(defaultValue = "1") double playbackSpeed,
+                                          @RequestParam(name = "dateBegin", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
+                                          @RequestParam(name = "dateEnd", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+                                          @RequestParam(defaultValue = "false") boolean preservePartitions,
+                                          ProducerSettings producerSettings,
+                                          PacingSettings pacingSettings,
+                                          FilterSettings filterSettings) {
+        return playbackService.createNewCapturePlayback(captureName, parseTopicMappings(topics), playbackSpeed,
+                startDate, endDate, preservePartitions, producerSettings, pacingSettings, filterSettings);
+    }
+
+    private Map<String, String> parseTopicMappings(List<String> topics) {
+        var mappings = new LinkedHashMap<String, String>();
+        for (String topic : topics) {
+            var parts = topic.split(":");
+            if (parts.length != 2 || parts[0].isBlank() || parts[1].isBlank())
+                throw new RuntimeException("Topic mapping " + topic + " must look like source:destination.");
+            if (mappings.put(parts[0], parts[1]) != null)
+                throw new RuntimeException("Source topic " + parts[0] + " is mapped more than once.");
+        }
+        return mappings;
     }
 
     @GetMapping("/playbacks")
@@ -33,8 +117,38 @@ public class PlaybackController {
         return playbackService.listPlaybacks();
     }
 
+    /**
+     * Playbacks are created in the background; this tells whether one is still starting, playing or failed to start.
+     */
+    @GetMapping("/playbacks/{playbackId}/status")
+    public PlaybackInfo getPlayback(@PathVariable("playbackId") String playbackId) {
+        return playbackService.getPlayback(playbackId);
+    }
+
     @GetMapping("/playbacks/{playbackId}")
     public void stopPlayback(@PathVariable("playbackId") String playbackId) {
         playbackService.stop(playbackId);
     }
+
+    @PostMapping("/playbacks/{playbackId}/pause")
+    public void pausePlayback(@PathVariable("playbackId") String playbackId) {
+        playbackService.pause(playbackId);
+    }
+
+    @PostMapping("/playbacks/{playbackId}/resume")
+    public void resumePlayback(@PathVariable("playbackId") String playbackId) {
+        playbackService.resume(playbackId);
+    }
+
+    @PostMapping("/playbacks/{playbackId}/speed")
+    public void changePlaybackSpeed(@PathVariable("playbackId") String playbackId,
+                                    @RequestParam double playbackSpeed) {
+        playbackService.changeSpeed(playbackId, playbackSpeed);
+    }
+
+    @PostMapping("/playbacks/{playbackId}/seek")
+    public void seekPlayback(@PathVariable("playbackId") String playbackId,
+                             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date position) {
+        playbackService.seek(playbackId, position);
+    }
 }
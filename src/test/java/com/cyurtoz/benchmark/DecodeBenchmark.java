@@ -0,0 +1,69 @@
+package com.cyurtoz.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-record cost of turning a JSON value into the handler type: the former {@code JsonDeserializer} into a
+ * map followed by {@code convertValue}, a direct {@code readValue}, and the raw pass-through that skips both.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DecodeBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private JsonDeserializer<Object> jsonDeserializer;
+    private byte[] value;
+
+    @Setup
+    public void prepare() {
+        jsonDeserializer = new JsonDeserializer<>(Object.class, false);
+        value = ("{\"orderId\":\"8b2c6a1e-7d4f-4f0e-9f3a-2a7c5b9d1e22\",\"customerId\":42,\"amount\":129.95,"
+                + "\"currency\":\"EUR\",\"status\":\"PAID\",\"lines\":[{\"sku\":\"A-1\",\"quantity\":2},"
+                + "{\"sku\":\"B-7\",\"quantity\":1}]}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Object deserializeThenConvertValue() {
+        return mapper.convertValue(jsonDeserializer.deserialize("topic", value), Order.class);
+    }
+
+    @Benchmark
+    public Object readValue() throws IOException {
+        return mapper.readValue(value, Order.class);
+    }
+
+    @Benchmark
+    public Object readTree() throws IOException {
+        return mapper.readValue(value, Map.class);
+    }
+
+    @Benchmark
+    public Object rawPassThrough() {
+        return value;
+    }
+
+    public static class Order {
+        public String orderId;
+        public long customerId;
+        public double amount;
+        public String currency;
+        public String status;
+        public Line[] lines;
+    }
+
+    public static class Line {
+        public String sku;
+        public int quantity;
+    }
+}
@@ -0,0 +1,104 @@
+package com.cyurtoz.benchmark;
+
+import com.cyurtoz.dispatch.PlaybackCursor;
+import com.cyurtoz.dispatch.SpeedPacer;
+import com.cyurtoz.dispatch.TimingWheelDispatcher;
+import com.cyurtoz.kafka.ListMessageStream;
+import com.cyurtoz.model.KafkaMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the previous one-task-per-message {@code ScheduledThreadPoolExecutor} approach with the shared
+ * timing wheel: dispatch jitter (actual minus intended send time) and heap held while the playback is pending.
+ * <p>
+ * Run with e.g. {@code java -Xmx8g -cp target/test-classes:target/classes:<deps> com.cyurtoz.benchmark.DispatchBenchmark 1000000 10000000}.
+ * Messages are spread evenly over a 20 second window.
+ */
+public class DispatchBenchmark {
+
+    private static final long WINDOW_MS = 20_000L;
+
+    public static void main(String[] args) throws InterruptedException {
+        long[] counts = args.length == 0 ? new long[]{1_000_000L, 10_000_000L}
+                : java.util.Arrays.stream(args).mapToLong(Long::parseLong).toArray();
+        for (long count : counts) {
+            System.out.printf("%n== %,d messages ==%n", count);
+            report("executor", runExecutor((int) count));
+            report("timing wheel", runTimingWheel((int) count));
+        }
+    }
+
+    private static Result runExecutor(int count) throws InterruptedException {
+        var messages = createMessages(count);
+        var recorder = new JitterRecorder();
+        var done = new CountDownLatch(count);
+        var executor = Executors.newScheduledThreadPool(1);
+        long heapBefore = usedHeap();
+        long startNanos = System.nanoTime();
+        long first = messages.get(0).getTimestamp();
+        for (var message : messages) {
+            long delayMs = message.getTimestamp() - first;
+            long dueNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(delayMs);
+            executor.schedule(() -> {
+                recorder.record(System.nanoTime() - dueNanos);
+                done.countDown();
+            }, delayMs, TimeUnit.MILLISECONDS);
+        }
+        long heap = usedHeap() - heapBefore;
+        done.await();
+        executor.shutdown();
+        return new Result(recorder, heap);
+    }
+
+    private static Result runTimingWheel(int count) throws InterruptedException {
+        var messages = createMessages(count);
+        var recorder = new JitterRecorder();
+        var done = new CountDownLatch(1);
+        var dispatcher = new TimingWheelDispatcher(1000L, 512, 0, -1L);
+        long heapBefore = usedHeap();
+        var cursor = new PlaybackCursor<>(new ListMessageStream<>(messages), dispatcher, new SpeedPacer(1.0),
+                (message, dueNanos) -> {
+                    recorder.record(System.nanoTime() - dueNanos);
+                    return true;
+                }, done::countDown);
+        cursor.start();
+        long heap = usedHeap() - heapBefore;
+        done.await();
+        dispatcher.shutdown();
+        return new Result(recorder, heap);
+    }
+
+    private static List<KafkaMessage<Long>> createMessages(int count) {
+        var messages = new ArrayList<KafkaMessage<Long>>(count);
+        long base = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            messages.add(new KafkaMessage<>(base + (long) i * WINDOW_MS / count, (long) i));
+        }
+        return messages;
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        var runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void report(String name, Result result) {
+        System.out.printf("%-14s heap %,8d KiB | %s%n", name, result.heapBytes / 1024, result.recorder.summary());
+    }
+
+    private static final class Result {
+        private final JitterRecorder recorder;
+        private final long heapBytes;
+
+        private Result(JitterRecorder recorder, long heapBytes) {
+            this.recorder = recorder;
+            this.heapBytes = heapBytes;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.cyurtoz.benchmark;
+
+import com.cyurtoz.dispatch.PlaybackCursor;
+import com.cyurtoz.dispatch.SpeedPacer;
+import com.cyurtoz.dispatch.TimingWheelDispatcher;
+import com.cyurtoz.kafka.ListMessageStream;
+import com.cyurtoz.model.KafkaMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays a 10 second window through the timing wheel at several message counts, speeds and batch windows.
+ * The score is the wall time of the whole playback, which should be close to 10 s divided by the speed;
+ * the dispatch jitter of each iteration is printed when it ends.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class DispatchJitterBenchmark {
+
+    private static final long WINDOW_MS = 10_000L;
+
+    @Param({"10000", "100000", "1000000"})
+    private int messages;
+
+    @Param({"1", "10", "100"})
+    private double speed;
+
+    @Param({"0", "1000"})
+    private long batchWindowMicros;
+
+    private List<KafkaMessage<Long>> window;
+    private TimingWheelDispatcher dispatcher;
+    private JitterRecorder recorder;
+
+    @Setup(Level.Trial)
+    public void prepare() {
+        window = new ArrayList<>(messages);
+        for (int i = 0; i < messages; i++) window.add(new KafkaMessage<>((long) i * WINDOW_MS / messages, (long) i));
+        dispatcher = new TimingWheelDispatcher(1000L, 512, 0, batchWindowMicros);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetRecorder() {
+        recorder = new JitterRecorder();
+    }
+
+    @Benchmark
+    public void playWindow() throws InterruptedException {
+        var done = new CountDownLatch(1);
+        new PlaybackCursor<>(new ListMessageStream<>(window), dispatcher, new SpeedPacer(speed),
+                (message, dueNanos) -> {
+                    recorder.record(System.nanoTime() - dueNanos);
+                    return true;
+                }, done::countDown).start();
+        done.await();
+    }
+
+    @TearDown(Level.Iteration)
+    public void report() {
+        System.out.printf("%n%,d messages at %.0fx, %d us batch window: %s%n", messages, speed, batchWindowMicros,
+                recorder.summary());
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        dispatcher.shutdown();
+    }
+}
@@ -0,0 +1,97 @@
+package com.cyurtoz.benchmark;
+
+import com.cyurtoz.handler.CustomPlaybackHandler;
+import com.cyurtoz.handler.HandlerExecutor;
+import com.cyurtoz.kafka.ListMessageStream;
+import com.cyurtoz.model.KafkaMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Overhead of running a window through a chain of {@link CustomPlaybackHandler}s the way
+ * {@code PlaybackService.createNewPlaybackWithHandler} does: map every message, then filter the empty results.
+ * The handlers themselves do almost nothing, so the score is the cost of the pipeline around them.
+ * {@code pipeline} runs the first handler on the shared {@link HandlerExecutor} instead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HandlerBenchmark {
+
+    @Param({"100000"})
+    private int messages;
+
+    @Param({"1", "4"})
+    private int handlers;
+
+    private List<KafkaMessage<Long>> window;
+    private List<CustomPlaybackHandler<Long>> chain;
+    private HandlerExecutor executor;
+
+    @Setup
+    public void prepare() {
+        window = new ArrayList<>(messages);
+        for (long i = 0; i < messages; i++) window.add(new KafkaMessage<>(i, i));
+        chain = new ArrayList<>();
+        for (int i = 0; i < handlers; i++) chain.add(new DropEveryTenth());
+        executor = new HandlerExecutor(0, 256, 10000);
+    }
+
+    @TearDown
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public List<KafkaMessage<Long>> mapThenFilter() {
+        var result = window;
+        for (var handler : chain) {
+            var mapped = result.stream().map(handler::handle).collect(Collectors.toList());
+            result = mapped.stream().filter(Optional::isPresent).map(Optional::get).collect(Collectors.toList());
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<KafkaMessage<Long>> singlePass() {
+        var result = new ArrayList<KafkaMessage<Long>>(window.size());
+        for (var message : window) {
+            Optional<KafkaMessage<Long>> current = Optional.of(message);
+            for (int i = 0; i < chain.size() && current.isPresent(); i++) current = chain.get(i).handle(current.get());
+            current.ifPresent(result::add);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long pipeline() {
+        long handled = 0;
+        try (var stream = executor.start(new ListMessageStream<>(window), chain.get(0))) {
+            while (stream.awaitNext(Duration.ofSeconds(1))) {
+                while (stream.poll() != null) handled++;
+            }
+        }
+        return handled;
+    }
+
+    private static class DropEveryTenth implements CustomPlaybackHandler<Long> {
+        @Override
+        public Optional<KafkaMessage<Long>> handle(KafkaMessage<Long> source) {
+            return source.getPayload() % 10 == 0 ? Optional.empty() : Optional.of(source.withPayload(source.getPayload() + 1));
+        }
+
+        @Override
+        public Class<Long> getType() {
+            return Long.class;
+        }
+    }
+}
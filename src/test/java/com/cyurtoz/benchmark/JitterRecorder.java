@@ -0,0 +1,50 @@
+package com.cyurtoz.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records how far from their due time, early or late, messages were dispatched in power-of-two microsecond buckets,
+ * so recording millions of samples needs no allocation.
+ */
+class JitterRecorder {
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    void record(long errorNanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(Math.abs(errorNanos));
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(micros));
+        count.incrementAndGet();
+        sumMicros.addAndGet(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    long meanMicros() {
+        return count.get() == 0 ? 0 : sumMicros.get() / count.get();
+    }
+
+    long maxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * @return upper bound of the bucket holding the given percentile
+     */
+    long percentileMicros(double percentile) {
+        long target = (long) Math.ceil(count.get() * percentile);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= target) return 1L << i;
+        }
+        return maxMicros();
+    }
+
+    String summary() {
+        return String.format("jitter mean %,d us  p50 < %,d us  p99 < %,d us  max %,d us",
+                meanMicros(), percentileMicros(0.50), percentileMicros(0.99), maxMicros());
+    }
+}
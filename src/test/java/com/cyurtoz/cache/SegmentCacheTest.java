@@ -0,0 +1,84 @@
+package com.cyurtoz.cache;
+
+import com.cyurtoz.model.KafkaMessage;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SegmentCacheTest {
+
+    private static final TopicPartition ORDERS = new TopicPartition("orders", 0);
+    private static final long SEGMENT_BYTES = 10 * 38L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void chainsContiguousSegmentsAndPrefersTheLongestOverlap() {
+        var cache = new SegmentCache(true, directory.toString(), Long.MAX_VALUE, Integer.MAX_VALUE);
+        write(cache, 0, 9);
+        write(cache, 10, 19);
+        write(cache, 5, 29);
+
+        var chain = cache.findChain(ORDERS, 3, -1);
+        assertThat(chain).extracting(Segment::getFirstOffset).containsExactly(0L, 5L);
+        assertThat(chain).extracting(Segment::getLastOffset).containsExactly(9L, 29L);
+        assertThat(cache.findChain(ORDERS, 3, 8)).hasSize(1);
+        assertThat(cache.findChain(ORDERS, 30, -1)).isEmpty();
+        assertThat(cache.findChain(new TopicPartition("orders", 1), 0, -1)).isEmpty();
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedSegmentBeyondMaxBytes() {
+        var cache = new SegmentCache(true, directory.toString(), 2 * SEGMENT_BYTES, Integer.MAX_VALUE);
+        write(cache, 0, 9);
+        write(cache, 10, 19);
+        cache.release(cache.findChain(ORDERS, 0, 9));
+        write(cache, 20, 29);
+
+        assertThat(cache.findChain(ORDERS, 0, 9)).hasSize(1);
+        assertThat(cache.findChain(ORDERS, 10, 19)).isEmpty();
+        assertThat(cache.findChain(ORDERS, 20, 29)).hasSize(1);
+        assertThat(segmentFiles()).isEqualTo(2);
+    }
+
+    @Test
+    void keepsAChainUntilItIsReleased() throws IOException {
+        var cache = new SegmentCache(true, directory.toString(), SEGMENT_BYTES, Integer.MAX_VALUE);
+        write(cache, 0, 9);
+        var chain = cache.findChain(ORDERS, 0, -1);
+        write(cache, 10, 19);
+
+        var reader = chain.get(0).open();
+        int read = 0;
+        while (reader.next()) assertThat(reader.offset()).isEqualTo(read++);
+        assertThat(read).isEqualTo(10);
+
+        cache.release(chain);
+        write(cache, 20, 29);
+        assertThat(cache.findChain(ORDERS, 0, -1)).isEmpty();
+        assertThat(cache.findChain(ORDERS, 20, -1)).hasSize(1);
+    }
+
+    private static void write(SegmentCache cache, long firstOffset, long lastOffset) {
+        try (var writer = cache.openWriter(ORDERS, firstOffset)) {
+            for (long offset = firstOffset; offset <= lastOffset; offset++) {
+                writer.append(offset, new KafkaMessage<>(offset, new byte[10]));
+            }
+        }
+    }
+
+    private long segmentFiles() {
+        try (var files = Files.list(directory)) {
+            return files.filter(path -> path.toString().endsWith(".seg")).count();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
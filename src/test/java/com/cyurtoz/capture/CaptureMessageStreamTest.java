@@ -0,0 +1,56 @@
+package com.cyurtoz.capture;
+
+import com.cyurtoz.filter.MessageFilter;
+import com.cyurtoz.model.KafkaMessage;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CaptureMessageStreamTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void playsBackTheCapturedRangeOfATopic() throws Exception {
+        var file = directory.resolve("window.capture");
+        try (var writer = new CaptureWriter(file, CaptureCompression.LZ4, 4096)) {
+            for (int i = 0; i < 1000; i++) {
+                var headers = new RecordHeaders();
+                headers.add("index", String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+                writer.append(new KafkaMessage<>(i, ("value-" + i).getBytes(StandardCharsets.UTF_8),
+                        ("key-" + i).getBytes(StandardCharsets.UTF_8), headers, i % 2 == 0 ? "orders" : "payments", 0));
+            }
+        }
+
+        var capture = CaptureFile.open(file);
+        assertThat(capture.getMessages()).isEqualTo(1000);
+        assertThat(capture.getTopics()).containsExactly("orders", "payments");
+        assertThat(capture.getChunkCount()).isGreaterThan(1);
+
+        var stream = new CaptureMessageStream(capture, Set.of("orders"), 100, 599, MessageFilter.ACCEPT_ALL,
+                ForkJoinPool.commonPool());
+        var timestamps = new ArrayList<Long>();
+        while (stream.awaitNext(Duration.ofSeconds(5))) {
+            var message = stream.poll();
+            assertThat(message.getTopic()).isEqualTo("orders");
+            assertThat(new String(message.getPayload(), StandardCharsets.UTF_8)).isEqualTo("value-" + message.getTimestamp());
+            timestamps.add(message.getTimestamp());
+        }
+        assertThat(timestamps).hasSize(250).startsWith(100L).endsWith(598L).isSorted();
+
+        assertThat(stream.seek(300)).isTrue();
+        assertThat(stream.awaitNext(Duration.ofSeconds(5))).isTrue();
+        assertThat(stream.poll().getTimestamp()).isEqualTo(300L);
+        stream.close();
+    }
+}
@@ -0,0 +1,80 @@
+package com.cyurtoz.dispatch;
+
+import com.cyurtoz.kafka.ListMessageStream;
+import com.cyurtoz.model.KafkaMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PlaybackCursorTest {
+
+    private static final int MESSAGES = 2000;
+
+    @Test
+    void sendsMessagesDueWithinTheBatchWindowAheadOfTime() throws InterruptedException {
+        var errors = play(2000L);
+
+        assertThat(errors).hasSize(MESSAGES);
+        assertThat(errors).allSatisfy(error -> assertThat(error).isGreaterThanOrEqualTo(-TimeUnit.MICROSECONDS.toNanos(2000)));
+        assertThat(errors).anySatisfy(error -> assertThat(error).isNegative());
+    }
+
+    @Test
+    void neverSendsEarlyWithoutBatchWindow() throws InterruptedException {
+        var errors = play(0L);
+
+        assertThat(errors).hasSize(MESSAGES);
+        assertThat(errors).allSatisfy(error -> assertThat(error).isGreaterThanOrEqualTo(0L));
+    }
+
+    @Test
+    void offersARefusedMessageAgainWithoutSkippingOrRepeatingIt() throws InterruptedException {
+        var dispatcher = new TimingWheelDispatcher(1000L, 64, 2, -1L);
+        try {
+            var window = new ArrayList<KafkaMessage<Integer>>();
+            for (int i = 0; i < 100; i++) window.add(new KafkaMessage<>(0L, i));
+            var sent = new ConcurrentLinkedQueue<Integer>();
+            var offers = new AtomicInteger();
+            var done = new CountDownLatch(1);
+            var cursor = new PlaybackCursor<>(new ListMessageStream<>(window), dispatcher, (message, nowNanos) -> nowNanos,
+                    (message, dueNanos) -> offers.incrementAndGet() % 3 != 0 && sent.add(message.getPayload()),
+                    done::countDown);
+            cursor.start();
+            assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(sent).containsExactlyElementsOf(window.stream().map(KafkaMessage::getPayload)
+                    .collect(Collectors.toList()));
+            assertThat(cursor.getDispatched()).isEqualTo(100);
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+
+    /**
+     * Plays a message every 100 us at speed 1.
+     *
+     * @return send minus due time of each message
+     */
+    private static List<Long> play(long batchWindowMicros) throws InterruptedException {
+        var dispatcher = new TimingWheelDispatcher(1000L, 64, 2, batchWindowMicros);
+        try {
+            var window = new ArrayList<KafkaMessage<Integer>>();
+            for (int i = 0; i < MESSAGES; i++) window.add(new KafkaMessage<>(i / 10L, i));
+            var errors = new ConcurrentLinkedQueue<Long>();
+            var done = new CountDownLatch(1);
+            new PlaybackCursor<>(new ListMessageStream<>(window), dispatcher, new SpeedPacer(1),
+                    (message, dueNanos) -> errors.add(System.nanoTime() - dueNanos), done::countDown).start();
+            assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+            return new ArrayList<>(errors);
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+}
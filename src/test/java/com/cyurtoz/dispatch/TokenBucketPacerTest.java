@@ -0,0 +1,36 @@
+package com.cyurtoz.dispatch;
+
+import com.cyurtoz.model.KafkaMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketPacerTest {
+
+    private static final long START = TimeUnit.SECONDS.toNanos(100);
+
+    @Test
+    void sendsBurstAtOnceThenPacesAtTargetRate() {
+        var pacer = new TokenBucketPacer(10, 3, false);
+        var message = new KafkaMessage<>(0L, new byte[10]);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(pacer.dueNanos(message, START)).isEqualTo(START);
+        }
+        assertThat(pacer.dueNanos(message, START)).isEqualTo(START + TimeUnit.MILLISECONDS.toNanos(100));
+
+        long later = START + TimeUnit.MILLISECONDS.toNanos(100);
+        assertThat(pacer.dueNanos(message, later)).isEqualTo(later);
+    }
+
+    @Test
+    void chargesPayloadBytesInByteMode() {
+        var pacer = new TokenBucketPacer(1000, 1000, true);
+        var message = new KafkaMessage<>(0L, new byte[600]);
+
+        assertThat(pacer.dueNanos(message, START)).isEqualTo(START);
+        assertThat(pacer.dueNanos(message, START)).isEqualTo(START + TimeUnit.MILLISECONDS.toNanos(200));
+    }
+}
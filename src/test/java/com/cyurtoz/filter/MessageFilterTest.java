@@ -0,0 +1,66 @@
+package com.cyurtoz.filter;
+
+import com.cyurtoz.model.FilterSettings;
+import com.cyurtoz.model.KafkaMessage;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageFilterTest {
+
+    @Test
+    void matchesJsonPathWithoutReadingUnrelatedFields() {
+        var settings = new FilterSettings();
+        settings.setJsonPath("$.customer.country");
+        settings.setJsonValue("NL");
+        var filter = MessageFilter.create(settings);
+
+        assertThat(filter.accept(message("k", "{\"lines\":[{\"country\":\"DE\"}],\"customer\":{\"id\":1,\"country\":\"NL\"}}")))
+                .isTrue();
+        assertThat(filter.accept(message("k", "{\"customer\":{\"country\":\"DE\"}}"))).isFalse();
+        assertThat(filter.accept(message("k", "{\"country\":\"NL\"}"))).isFalse();
+        assertThat(filter.accept(message("k", "not json"))).isFalse();
+    }
+
+    @Test
+    void combinesKeyAndHeaderConditions() {
+        var settings = new FilterSettings();
+        settings.setKeys(List.of("order-1", "order-2"));
+        settings.setHeaders(List.of("source=web"));
+        var filter = MessageFilter.create(settings);
+
+        var fromWeb = message("order-1", "{}");
+        fromWeb.getHeaders().add("source", "web".getBytes(StandardCharsets.UTF_8));
+        var fromApp = message("order-2", "{}");
+        fromApp.getHeaders().add("source", "app".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(filter.accept(fromWeb)).isTrue();
+        assertThat(filter.accept(fromApp)).isFalse();
+        assertThat(filter.accept(message("order-3", "{}"))).isFalse();
+    }
+
+    @Test
+    void samplesTheSameKeysEveryTime() {
+        var settings = new FilterSettings();
+        settings.setSampleRate(0.1);
+        var filter = MessageFilter.create(settings);
+
+        int kept = 0;
+        for (int i = 0; i < 10000; i++) {
+            var message = message("key-" + i, "{}");
+            boolean accepted = filter.accept(message);
+            assertThat(filter.accept(message)).isEqualTo(accepted);
+            if (accepted) kept++;
+        }
+        assertThat(kept).isBetween(800, 1200);
+    }
+
+    private static KafkaMessage<byte[]> message(String key, String value) {
+        return new KafkaMessage<>(0L, value.getBytes(StandardCharsets.UTF_8), key.getBytes(StandardCharsets.UTF_8),
+                new RecordHeaders(), "orders", 0);
+    }
+}
@@ -0,0 +1,72 @@
+package com.cyurtoz.handler;
+
+import com.cyurtoz.kafka.ListMessageStream;
+import com.cyurtoz.model.KafkaMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HandlerPipelineTest {
+
+    private final HandlerExecutor executor = new HandlerExecutor(4, 8, 1000);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void handlesInParallelAndKeepsTimestampOrder() {
+        var messages = new ArrayList<KafkaMessage<Long>>();
+        for (long i = 0; i < 1000; i++) {
+            var key = ("key-" + i % 7).getBytes(StandardCharsets.UTF_8);
+            messages.add(new KafkaMessage<>(i, i, key, null, null, null));
+        }
+
+        var stream = executor.start(new ListMessageStream<>(messages), new DropOdd());
+        var timestamps = new ArrayList<Long>();
+        while (stream.awaitNext(Duration.ofSeconds(5))) {
+            KafkaMessage<Long> message;
+            while ((message = stream.poll()) != null) timestamps.add(message.getTimestamp());
+        }
+
+        assertThat(timestamps).hasSize(500).isSorted().allMatch(timestamp -> timestamp % 2 == 0);
+        assertThat(stream.isFinished()).isTrue();
+    }
+
+    @Test
+    void startsPlayingBeforeTheSourceIsReadWhenMessagesMapToFewerLanesThanThreads() {
+        var messages = new ArrayList<KafkaMessage<Long>>();
+        for (long i = 0; i < 100_000; i++) messages.add(new KafkaMessage<>(i, i, null, null, "orders", 0));
+        var source = new ListMessageStream<>(messages);
+
+        var stream = executor.start(source, new DropOdd());
+        assertThat(stream.awaitNext(Duration.ofSeconds(5))).isTrue();
+        assertThat(source.getBuffered()).isGreaterThan(90_000);
+
+        long played = 0;
+        while (stream.awaitNext(Duration.ofSeconds(5))) {
+            while (stream.poll() != null) played++;
+        }
+        assertThat(played).isEqualTo(50_000);
+        assertThat(stream.isFinished()).isTrue();
+    }
+
+    private static class DropOdd implements CustomPlaybackHandler<Long> {
+        @Override
+        public Optional<KafkaMessage<Long>> handle(KafkaMessage<Long> source) {
+            return source.getPayload() % 2 == 0 ? Optional.of(source) : Optional.empty();
+        }
+
+        @Override
+        public Class<Long> getType() {
+            return Long.class;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.cyurtoz.kafka;
+
+import com.cyurtoz.filter.MessageFilter;
+import com.cyurtoz.model.FilterSettings;
+import com.cyurtoz.model.KafkaMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Time to fetch a whole window through the partition fetch loop (formerly {@code pollMessagesUntilEndOffsets})
+ * from a {@link MockConsumer}, so only the loop itself, the conversion and the buffering are measured.
+ * Divide {@code records} by the score for records per millisecond.
+ * {@code fetchSampled} keeps 1% of the records, to show what rejected records still cost.
+ * {@code fetchDecoded} decodes the JSON values like typed playbacks ({@code streamMessagesBetween} with a type) do.
+ * Lives in this package because {@link PartitionFetcher} is package-private.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FetchBenchmark {
+
+    private static final TopicPartition PARTITION = new TopicPartition("benchmark", 0);
+
+    @Param({"10000", "100000"})
+    private int records;
+
+    @Param({"256"})
+    private int valueSize;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private List<ConsumerRecord<byte[], byte[]>> prepared;
+
+    /**
+     * Values are JSON objects padded to {@code valueSize} bytes, so the same records serve every benchmark.
+     */
+    @Setup
+    public void prepare() {
+        prepared = new ArrayList<>(records);
+        for (int offset = 0; offset < records; offset++) {
+            var prefix = "{\"id\":" + offset + ",\"note\":\"";
+            var value = prefix + "x".repeat(Math.max(valueSize - prefix.length() - 2, 0)) + "\"}";
+            prepared.add(new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(), offset,
+                    ("key-" + offset).getBytes(), value.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    @Benchmark
+    public MessageBuffer<byte[]> fetchRaw() {
+        return fetch(MessageFilter.ACCEPT_ALL, Function.identity());
+    }
+
+    @Benchmark
+    public MessageBuffer<byte[]> fetchSampled() {
+        var settings = new FilterSettings();
+        settings.setSampleRate(0.01);
+        return fetch(MessageFilter.create(settings), Function.identity());
+    }
+
+    @Benchmark
+    public MessageBuffer<Map> fetchDecoded() {
+        return fetch(MessageFilter.ACCEPT_ALL, message -> message.withPayload(decode(message.getPayload())));
+    }
+
+    private Map decode(byte[] value) {
+        try {
+            return value == null ? null : mapper.readValue(value, Map.class);
+        } catch (IOException e) {
+            throw new RuntimeException("Message could not be deserialized to Map", e);
+        }
+    }
+
+    private <T> MessageBuffer<T> fetch(MessageFilter filter, Function<KafkaMessage<byte[]>, KafkaMessage<T>> converter) {
+        var consumer = new MockConsumer<byte[], byte[]>(OffsetResetStrategy.EARLIEST);
+        consumer.updateBeginningOffsets(Map.of(PARTITION, 0L));
+        consumer.schedulePollTask(() -> prepared.forEach(consumer::addRecord));
+        var buffer = new MessageBuffer<T>(Integer.MAX_VALUE);
+        var window = new PartitionWindow(PARTITION, 0L, records - 1, PartitionWindow.NO_START_TIMESTAMP, Long.MAX_VALUE,
+                null);
+        new PartitionFetcher<>(consumer, Map.of(PARTITION, buffer), Map.of(PARTITION, window), new HashMap<>(), filter,
+                converter).runToCompletion();
+        return buffer;
+    }
+}
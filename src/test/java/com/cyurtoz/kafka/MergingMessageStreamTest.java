@@ -0,0 +1,51 @@
+package com.cyurtoz.kafka;
+
+import com.cyurtoz.model.KafkaMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MergingMessageStreamTest {
+
+    @Test
+    void mergesLanesInTimestampOrder() {
+        var first = lane(1, 4, 7);
+        var second = lane(2, 3, 9);
+        var third = lane(5);
+        var stream = new MergingMessageStream<>(List.of(first, second, third), () -> { });
+
+        var timestamps = new ArrayList<Long>();
+        KafkaMessage<String> message;
+        while ((message = stream.poll()) != null) timestamps.add(message.getTimestamp());
+
+        assertThat(timestamps).containsExactly(1L, 2L, 3L, 4L, 5L, 7L, 9L);
+        assertThat(stream.isFinished()).isTrue();
+    }
+
+    @Test
+    void waitsForLaneThatHasNotDeliveredYet() {
+        var fetched = lane(3);
+        var pending = new MessageBuffer<String>(10);
+        var stream = new MergingMessageStream<>(List.of(fetched, pending), () -> { });
+
+        assertThat(stream.peek()).isNull();
+        assertThat(stream.isFinished()).isFalse();
+
+        pending.add(new KafkaMessage<>(1L, "late"));
+        pending.finish();
+
+        assertThat(stream.poll().getTimestamp()).isEqualTo(1L);
+        assertThat(stream.poll().getTimestamp()).isEqualTo(3L);
+        assertThat(stream.isFinished()).isTrue();
+    }
+
+    private static MessageBuffer<String> lane(long... timestamps) {
+        var buffer = new MessageBuffer<String>(10);
+        for (long timestamp : timestamps) buffer.add(new KafkaMessage<>(timestamp, "m" + timestamp));
+        buffer.finish();
+        return buffer;
+    }
+}
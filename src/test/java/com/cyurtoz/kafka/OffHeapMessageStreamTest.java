@@ -0,0 +1,52 @@
+package com.cyurtoz.kafka;
+
+import com.cyurtoz.model.KafkaMessage;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OffHeapMessageStreamTest {
+
+    @TempDir
+    Path spillDirectory;
+
+    @Test
+    void restoresMessagesAndSpillsBeyondTheBudget() throws Exception {
+        var budget = new AtomicLong(1 << 20);
+        var window = new OffHeapMessageStream(budget, 1 << 20, spillDirectory);
+        for (int i = 0; i < 3000; i++) {
+            var headers = new RecordHeaders();
+            headers.add("index", String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+            window.add(new KafkaMessage<>(i * 10L, new byte[1000], ("key-" + i).getBytes(StandardCharsets.UTF_8),
+                    headers, i % 2 == 0 ? "orders" : "payments", i % 3));
+        }
+
+        try (var files = Files.list(spillDirectory)) {
+            assertThat(files.count()).isPositive();
+        }
+        assertThat(window.seek(15000L)).isTrue();
+        var message = window.poll();
+        assertThat(message.getTimestamp()).isEqualTo(15000L);
+        assertThat(new String(message.getKey(), StandardCharsets.UTF_8)).isEqualTo("key-1500");
+        assertThat(message.getHeaders().lastHeader("index").value()).isEqualTo("1500".getBytes(StandardCharsets.UTF_8));
+        assertThat(message.getTopic()).isEqualTo("orders");
+        assertThat(message.getPartition()).isEqualTo(0);
+        assertThat(message.getPayload()).hasSize(1000);
+        assertThat(window.getBuffered()).isEqualTo(1499);
+        assertThat(window.peek()).isSameAs(window.peek()).isSameAs(window.poll());
+
+        window.close();
+        assertThat(window.peek()).isNull();
+        assertThat(budget.get()).isEqualTo(1 << 20);
+        try (var files = Files.list(spillDirectory)) {
+            assertThat(files.count()).isZero();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.cyurtoz.kafka;
+
+import com.cyurtoz.filter.MessageFilter;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PartitionFetcherTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("orders", 0);
+
+    @Test
+    void readsExactlyTheWindowAndStopsWithoutWaitingForAnEmptyPoll() {
+        var consumer = consumerWith(100);
+        var buffer = new MessageBuffer<byte[]>(Integer.MAX_VALUE);
+        var window = new PartitionWindow(PARTITION, 10, 60, 205, 500, null);
+        long started = System.nanoTime();
+        new PartitionFetcher<>(consumer, Map.of(PARTITION, buffer), Map.of(PARTITION, window), new HashMap<>(),
+                MessageFilter.ACCEPT_ALL, Function.identity()).runToCompletion();
+
+        assertThat(System.nanoTime() - started).isLessThan(500_000_000L);
+        assertThat(buffer.isFinished()).isTrue();
+        assertThat(buffer.poll().getOffset()).isEqualTo(21L);
+        long last = 21;
+        for (var message = buffer.poll(); message != null; message = buffer.poll()) last = message.getOffset();
+        assertThat(last).isEqualTo(50L);
+        assertThat(consumer.closed()).isTrue();
+    }
+
+    @Test
+    void takesTurnsOnASharedScheduler() throws Exception {
+        var scheduler = Executors.newScheduledThreadPool(1);
+        try {
+            var buffers = new HashMap<Integer, MessageBuffer<byte[]>>();
+            for (int i = 0; i < 20; i++) {
+                var buffer = new MessageBuffer<byte[]>(10);
+                buffers.put(i, buffer);
+                var window = new PartitionWindow(PARTITION, 0, 99, PartitionWindow.NO_START_TIMESTAMP, Long.MAX_VALUE,
+                        null);
+                new PartitionFetcher<>(consumerWith(100), Map.of(PARTITION, buffer), Map.of(PARTITION, window),
+                        new HashMap<>(), MessageFilter.ACCEPT_ALL, Function.identity()).start(scheduler);
+            }
+            long deadline = System.currentTimeMillis() + 10_000;
+            long drained = 0;
+            while (drained < 2000 && System.currentTimeMillis() < deadline) {
+                for (var buffer : buffers.values()) {
+                    while (buffer.poll() != null) drained++;
+                }
+                Thread.sleep(1);
+            }
+            assertThat(drained).isEqualTo(2000);
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    void letsTheMergeStartWhenTheFilterRejectsAWholePartition() {
+        var other = new TopicPartition("orders", 1);
+        var consumer = new MockConsumer<byte[], byte[]>(OffsetResetStrategy.EARLIEST);
+        consumer.updateBeginningOffsets(Map.of(PARTITION, 0L, other, 0L));
+        consumer.schedulePollTask(() -> {
+            for (long offset = 0; offset < 100; offset++) {
+                for (var tp : List.of(PARTITION, other)) {
+                    consumer.addRecord(new ConsumerRecord<>(tp.topic(), tp.partition(), offset, offset * 10,
+                            TimestampType.CREATE_TIME, 0L, 0, 0, new byte[]{(byte) tp.partition()}, new byte[0]));
+                }
+            }
+        });
+        var matching = new MessageBuffer<byte[]>(Integer.MAX_VALUE);
+        var rejected = new MessageBuffer<byte[]>(Integer.MAX_VALUE);
+        // The windows reach past the records read so far, so neither partition is finished
+        var fetcher = new PartitionFetcher<>(consumer, Map.of(PARTITION, matching, other, rejected),
+                Map.of(PARTITION, new PartitionWindow(PARTITION, 0, 1000, PartitionWindow.NO_START_TIMESTAMP,
+                                Long.MAX_VALUE, null),
+                        other, new PartitionWindow(other, 0, 1000, PartitionWindow.NO_START_TIMESTAMP,
+                                Long.MAX_VALUE, null)),
+                new HashMap<>(), message -> message.getKey()[0] == 0, Function.identity());
+        fetcher.step();
+
+        var merged = new MergingMessageStream<>(List.of(matching, rejected), () -> { });
+        assertThat(rejected.isFinished()).isFalse();
+        assertThat(merged.poll().getOffset()).isEqualTo(0L);
+        assertThat(rejected.getWatermark()).isEqualTo(990L);
+        fetcher.close();
+    }
+
+    private static MockConsumer<byte[], byte[]> consumerWith(int records) {
+        var consumer = new MockConsumer<byte[], byte[]>(OffsetResetStrategy.EARLIEST);
+        consumer.updateBeginningOffsets(Map.of(PARTITION, 0L));
+        consumer.schedulePollTask(() -> {
+            for (long offset = 0; offset < records; offset++) {
+                consumer.addRecord(new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(), offset, offset * 10,
+                        TimestampType.CREATE_TIME, 0L, 0, 0, null, new byte[0]));
+            }
+        });
+        return consumer;
+    }
+}
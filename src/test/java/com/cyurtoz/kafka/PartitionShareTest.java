@@ -0,0 +1,37 @@
+package com.cyurtoz.kafka;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PartitionShareTest {
+
+    @Test
+    void splitsPartitionsBetweenMembersWithoutOverlap() {
+        var partitions = IntStream.range(0, 10)
+                .mapToObj(partition -> new TopicPartition("orders", partition))
+                .collect(Collectors.toList());
+
+        var shared = new HashSet<TopicPartition>();
+        for (int member = 0; member < 3; member++) {
+            var share = new PartitionShare(member, 3).of(partitions);
+            assertThat(share).hasSizeBetween(3, 4);
+            assertThat(share).allSatisfy(partition -> assertThat(shared.add(partition)).isTrue());
+        }
+        assertThat(shared).containsExactlyInAnyOrderElementsOf(partitions);
+        assertThat(PartitionShare.ALL.of(partitions)).isEqualTo(partitions);
+    }
+
+    @Test
+    void leavesMembersBeyondThePartitionCountWithoutPartitions() {
+        var partitions = List.of(new TopicPartition("orders", 0), new TopicPartition("orders", 1));
+
+        assertThat(new PartitionShare(2, 3).of(partitions)).isEmpty();
+    }
+}
@@ -0,0 +1,73 @@
+package com.cyurtoz.kafka;
+
+import com.cyurtoz.metrics.PlaybackMetricsFactory;
+import com.cyurtoz.model.KafkaMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PlaybackSenderTest {
+
+    @Test
+    void closesOnceItsOwnSendsAreAcknowledgedWithoutFlushingTheSharedProducer() {
+        var producer = new MockProducer<>(false, new ByteArraySerializer(), new ByteArraySerializer());
+        var metrics = new PlaybackMetricsFactory(new SimpleMeterRegistry()).create("playback");
+        var released = new AtomicInteger();
+        var finished = new PlaybackSender(producer, new ObjectMapper(), 10, metrics::topicMeters, released::incrementAndGet);
+        var running = new PlaybackSender(producer, new ObjectMapper(), 10, metrics::topicMeters, released::incrementAndGet);
+
+        finished.send("orders", new KafkaMessage<>(0L, new byte[10]), false);
+        running.send("orders", new KafkaMessage<>(0L, new byte[10]), false);
+        assertThat(producer.completeNext()).isTrue();
+        finished.close();
+
+        assertThat(finished.getSent()).isEqualTo(1);
+        assertThat(released).hasValue(1);
+        assertThat(running.getSent()).isZero();
+        assertThat(producer.completeNext()).isTrue();
+        assertThat(running.getSent()).isEqualTo(1);
+    }
+
+    @Test
+    void refusesSendsBeyondTheInFlightLimitInsteadOfBlocking() {
+        var producer = new MockProducer<>(false, new ByteArraySerializer(), new ByteArraySerializer());
+        var metrics = new PlaybackMetricsFactory(new SimpleMeterRegistry()).create("playback");
+        var sender = new PlaybackSender(producer, new ObjectMapper(), 2, metrics::topicMeters, () -> {
+        });
+        var message = new KafkaMessage<>(0L, new byte[10]);
+
+        assertThat(sender.send("orders", message, false)).isTrue();
+        assertThat(sender.send("orders", message, false)).isTrue();
+        assertThat(sender.send("orders", message, false)).isFalse();
+        assertThat(producer.history()).hasSize(2);
+        assertThat(producer.completeNext()).isTrue();
+        assertThat(sender.send("orders", message, false)).isTrue();
+        assertThat(producer.history()).hasSize(3);
+    }
+
+    @Test
+    void measuresEverySendOnTheMetersOfItsTopic() {
+        var producer = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+        var registry = new SimpleMeterRegistry();
+        var metrics = new PlaybackMetricsFactory(registry).create("playback");
+        var sender = new PlaybackSender(producer, new ObjectMapper(), 10, metrics::topicMeters, () -> {
+        });
+
+        sender.send("orders", new KafkaMessage<>(0L, new byte[10]), false);
+        sender.send("orders", new KafkaMessage<>(0L, new byte[10]), false);
+        sender.send("payments", new KafkaMessage<>(0L, new byte[20]), false);
+
+        assertThat(registry.get("playback.sent.messages").tag("topic", "orders").counter().count()).isEqualTo(2);
+        assertThat(registry.get("playback.sent.bytes").tag("topic", "payments").counter().count()).isEqualTo(20);
+        assertThat(registry.get("playback.send.latency").tag("topic", "payments").timer().count()).isEqualTo(1);
+        assertThat(sender.getSent()).isEqualTo(3);
+        metrics.close();
+        assertThat(registry.find("playback.sent.messages").meters()).isEmpty();
+    }
+}
@@ -0,0 +1,99 @@
+package com.cyurtoz.kafka;
+
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class TimestampIndexTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("orders", 0);
+    private static final int RECORDS = 10_000;
+
+    @Test
+    void resolvesWindowsFromPointsAddedWhileReading() {
+        var consumer = new MockConsumer<byte[], byte[]>(OffsetResetStrategy.EARLIEST);
+        consumer.updatePartitions("orders", List.of(new PartitionInfo("orders", 0, null, null, null)));
+        consumer.updateBeginningOffsets(Map.of(PARTITION, 0L));
+        consumer.updateEndOffsets(Map.of(PARTITION, (long) RECORDS));
+        var index = new TimestampIndex(() -> consumer, 60_000, 100);
+
+        var read = new PartitionWindow(PARTITION, 0, RECORDS - 1, 0L, Long.MAX_VALUE, index);
+        for (long offset = 0; offset < RECORDS; offset++) read.admit(offset, timestampOf(offset));
+
+        var range = index.resolve(List.of("orders"), 25_005, 50_000).get(PARTITION);
+        assertThat(range.getStartOffset()).isLessThanOrEqualTo(2501).isGreaterThan(2400);
+        assertThat(range.getStartReachedBy()).isGreaterThanOrEqualTo(2501).isLessThan(2600);
+        assertThat(range.getEndNotBefore()).isLessThanOrEqualTo(5000).isGreaterThan(4900);
+        assertThat(range.getEndOffset()).isGreaterThanOrEqualTo(5000).isLessThan(5100);
+
+        var admitted = new ArrayList<Long>();
+        var window = new PartitionWindow(PARTITION, range.getStartOffset(), range.getEndOffset(), 25_005, 50_000, index);
+        for (long offset = range.getStartOffset(); !window.isComplete(offset - 1); offset++) {
+            if (window.admit(offset, timestampOf(offset))) admitted.add(offset);
+        }
+        assertThat(admitted).hasSize(2500).startsWith(2501L).endsWith(5000L);
+    }
+
+    @Test
+    void endsWindowsPastTheLastRecordAtTheHighWatermark() {
+        var consumer = new MockConsumer<byte[], byte[]>(OffsetResetStrategy.EARLIEST);
+        consumer.updatePartitions("orders", List.of(new PartitionInfo("orders", 0, null, null, null)));
+        consumer.updateBeginningOffsets(Map.of(PARTITION, 0L));
+        consumer.updateEndOffsets(Map.of(PARTITION, (long) RECORDS));
+        var index = new TimestampIndex(() -> consumer, 60_000, 100);
+
+        var read = new PartitionWindow(PARTITION, 0, RECORDS - 1, 0L, Long.MAX_VALUE, index);
+        for (long offset = 0; offset < RECORDS; offset++) read.admit(offset, timestampOf(offset));
+
+        var range = index.resolve(List.of("orders"), 0, Long.MAX_VALUE).get(PARTITION);
+        assertThat(range.getStartOffset()).isEqualTo(0);
+        assertThat(range.getEndOffset()).isEqualTo(RECORDS - 1);
+        assertThat(index.resolve(List.of("orders"), RECORDS * 10L, Long.MAX_VALUE)).isEmpty();
+    }
+
+    @Test
+    void recordsPointsWhileALookupWaitsForTheBroker() throws Exception {
+        var asked = new CountDownLatch(1);
+        var answer = new CountDownLatch(1);
+        var consumer = new MockConsumer<byte[], byte[]>(OffsetResetStrategy.EARLIEST) {
+            @Override
+            public Map<TopicPartition, OffsetAndTimestamp> offsetsForTimes(Map<TopicPartition, Long> timestamps) {
+                asked.countDown();
+                try {
+                    answer.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return Map.of();
+            }
+        };
+        consumer.updatePartitions("orders", List.of(new PartitionInfo("orders", 0, null, null, null)));
+        consumer.updateBeginningOffsets(Map.of(PARTITION, 0L));
+        consumer.updateEndOffsets(Map.of(PARTITION, (long) RECORDS));
+        var index = new TimestampIndex(() -> consumer, 60_000, 100);
+
+        var lookup = CompletableFuture.supplyAsync(() -> index.resolve(List.of("orders"), 25_005, 50_000));
+        assertThat(asked.await(10, TimeUnit.SECONDS)).isTrue();
+        assertTimeoutPreemptively(Duration.ofSeconds(1), () -> index.record(PARTITION, 2500, timestampOf(2500)));
+        answer.countDown();
+        assertThat(lookup.get(10, TimeUnit.SECONDS)).isEmpty();
+    }
+
+    private static long timestampOf(long offset) {
+        return offset * 10;
+    }
+}
@@ -0,0 +1,69 @@
+package com.cyurtoz.store;
+
+import com.cyurtoz.model.KafkaMessage;
+import com.cyurtoz.model.PacingSettings;
+import com.cyurtoz.model.PlaybackDefinition;
+import com.cyurtoz.model.ProducerSettings;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PlaybackStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void resumesFromTheLastCheckpointAfterARestart() {
+        var offsets = new OffsetTracker(Map.of());
+        offsets.record(new KafkaMessage<>(100L, new byte[0], null, null, "orders", 0, 41L));
+        offsets.record(new KafkaMessage<>(120L, new byte[0], null, null, "orders", 1, 7L));
+        offsets.record(new KafkaMessage<>(130L, new byte[0], null, null, "orders", 0, 42L));
+
+        var store = new PlaybackStore(true, directory.toString(), 60_000);
+        store.track("playback", () -> checkpointOf(offsets));
+        store.shutdown();
+
+        var checkpoints = new PlaybackStore(true, directory.toString(), 60_000).load();
+        assertThat(checkpoints).hasSize(1);
+        var checkpoint = checkpoints.get(0);
+        assertThat(checkpoint).isEqualTo(checkpointOf(offsets));
+        assertThat(new OffsetTracker(checkpoint.getOffsets()).nextOffsets())
+                .containsEntry(new TopicPartition("orders", 0), 43L)
+                .containsEntry(new TopicPartition("orders", 1), 8L);
+    }
+
+    @Test
+    void forgetsRemovedPlaybacks() {
+        var store = new PlaybackStore(true, directory.toString(), 60_000);
+        store.track("playback", () -> checkpointOf(new OffsetTracker(Map.of())));
+        store.remove("playback");
+        store.shutdown();
+
+        assertThat(new PlaybackStore(true, directory.toString(), 60_000).load()).isEmpty();
+    }
+
+    private static PlaybackCheckpoint checkpointOf(OffsetTracker offsets) {
+        var definition = new PlaybackDefinition();
+        definition.setTopicMappings(new LinkedHashMap<>(Map.of("orders", "orders-replay")));
+        definition.setSpeed(2.0);
+        definition.setWindowStart(0L);
+        definition.setWindowEnd(1000L);
+        definition.setProducerSettings(new ProducerSettings());
+        definition.setPacingSettings(new PacingSettings());
+        var checkpoint = new PlaybackCheckpoint();
+        checkpoint.setId("playback");
+        checkpoint.setDefinition(definition);
+        checkpoint.setPosition(130L);
+        checkpoint.setDispatchedMessages(3);
+        checkpoint.setSpeed(2.0);
+        checkpoint.setOffsets(offsets.snapshot());
+        return checkpoint;
+    }
+}